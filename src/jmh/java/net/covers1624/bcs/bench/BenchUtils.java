@@ -0,0 +1,56 @@
+package net.covers1624.bcs.bench;
+
+import net.covers1624.bcs.BadCodeScanner;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.engine.StreamingScanEngine;
+import net.covers1624.bcs.engine.TreeScanEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+final class BenchUtils {
+
+    private BenchUtils() {
+    }
+
+    static Function<ScanPlan, ScanEngine> engineFactory(String engine) {
+        return switch (engine) {
+            case "tree" -> TreeScanEngine::new;
+            case "streaming" -> StreamingScanEngine::new;
+            default -> throw new IllegalArgumentException("Unknown engine: " + engine);
+        };
+    }
+
+    /**
+     * Create a {@link BadCodeScanner} set up with {@link CorpusGenerator#CONFIG}.
+     *
+     * @param dir    A directory to write the config to.
+     * @param engine The engine to use, {@code tree} or {@code streaming}.
+     * @return The scanner.
+     */
+    static BadCodeScanner newScanner(Path dir, String engine) throws IOException {
+        Path config = dir.resolve("config.json");
+        Files.writeString(config, CorpusGenerator.CONFIG);
+
+        BadCodeScanner scanner = new BadCodeScanner(BadCodeScanner.DEFAULT_SCANNERS);
+        scanner.setEngineFactory(engineFactory(engine));
+        scanner.setup(config);
+        return scanner;
+    }
+
+    static void deleteDir(Path dir) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            paths = stream.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+}
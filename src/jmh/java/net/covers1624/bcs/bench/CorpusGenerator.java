@@ -0,0 +1,253 @@
+package net.covers1624.bcs.bench;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import joptsimple.util.PathConverter;
+import net.covers1624.quack.io.IOUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static java.util.Arrays.asList;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates reproducible jars of synthetic classes for benchmarking.
+ * <p>
+ * Each method is a sequence of small, stack neutral statements. Each statement
+ * is either filler, or with probability {@code hitDensity}, something matched by
+ * {@link #CONFIG}. The same seed and parameters always produce identical jars.
+ */
+public class CorpusGenerator {
+
+    /**
+     * A config which matches every kind of hit this generator emits.
+     */
+    public static final String CONFIG = """
+            {
+              "groups": {
+                "reflection": {
+                  "method_use": ["java.lang.Class forName", "java.lang.reflect.Method invoke"],
+                  "type_use": ["sun/misc/"]
+                },
+                "sys": {
+                  "field_use": ["java.lang.System out"],
+                  "opcode_use": ["MONITORENTER"]
+                }
+              }
+            }
+            """;
+
+    private static final String PACKAGE = "net/covers1624/bcs/generated/";
+    private static final int FILLER_KINDS = 4;
+    private static final int HIT_KINDS = 5;
+
+    private final long seed;
+    private int classCount = 1000;
+    private int methodsPerClass = 10;
+    private int methodSize = 50;
+    private double hitDensity = 0.001;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        OptionParser parser = new OptionParser();
+        OptionSpec<Void> helpOpt = parser.acceptsAll(asList("h", "help"), "Prints this help.").forHelp();
+        OptionSpec<Long> seedOpt = parser.accepts("seed", "The random seed.")
+                .withRequiredArg()
+                .ofType(Long.class)
+                .defaultsTo(0L);
+        OptionSpec<Integer> classesOpt = parser.accepts("classes", "The number of classes to generate.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(1000);
+        OptionSpec<Integer> methodsOpt = parser.accepts("methods", "The number of methods in each class.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(10);
+        OptionSpec<Integer> methodSizeOpt = parser.accepts("method-size", "The number of statements in each method.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(50);
+        OptionSpec<Double> densityOpt = parser.accepts("hit-density", "The chance of each statement producing a result.")
+                .withRequiredArg()
+                .ofType(Double.class)
+                .defaultsTo(0.001);
+        OptionSpec<Path> outputOpt = parser.acceptsAll(asList("o", "output"), "The jar to write.")
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter())
+                .required();
+
+        OptionSet optSet = parser.parse(args);
+        if (optSet.has(helpOpt)) {
+            parser.printHelpOn(System.err);
+            System.exit(-1);
+        }
+
+        CorpusGenerator generator = new CorpusGenerator(optSet.valueOf(seedOpt));
+        generator.setClassCount(optSet.valueOf(classesOpt));
+        generator.setMethodsPerClass(optSet.valueOf(methodsOpt));
+        generator.setMethodSize(optSet.valueOf(methodSizeOpt));
+        generator.setHitDensity(optSet.valueOf(densityOpt));
+        generator.writeJar(optSet.valueOf(outputOpt));
+    }
+
+    public void setClassCount(int classCount) {
+        this.classCount = classCount;
+    }
+
+    public void setMethodsPerClass(int methodsPerClass) {
+        this.methodsPerClass = methodsPerClass;
+    }
+
+    /**
+     * @param methodSize The number of statements in each method.
+     */
+    public void setMethodSize(int methodSize) {
+        this.methodSize = methodSize;
+    }
+
+    /**
+     * @param hitDensity The chance, between 0 and 1, of each statement producing a result.
+     */
+    public void setHitDensity(double hitDensity) {
+        this.hitDensity = hitDensity;
+    }
+
+    /**
+     * Write a jar containing {@code classCount} classes.
+     *
+     * @param jar The jar to write.
+     * @throws IOException If an IO error occurs.
+     */
+    public void writeJar(Path jar) throws IOException {
+        try (OutputStream os = Files.newOutputStream(IOUtils.makeParents(jar));
+             JarOutputStream jos = new JarOutputStream(os)) {
+            for (int i = 0; i < classCount; i++) {
+                String name = className(i);
+                JarEntry entry = new JarEntry(name + ".class");
+                // Fixed timestamps keep the jar byte for byte reproducible.
+                entry.setTime(0);
+                jos.putNextEntry(entry);
+                jos.write(generateClass(i));
+                jos.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Generate a single class.
+     * <p>
+     * Each class is seeded by its index, so may be generated on its own.
+     *
+     * @param index The index of the class.
+     * @return The class bytes.
+     */
+    public byte[] generateClass(int index) {
+        SplittableRandom rand = new SplittableRandom(seed * 31 + index);
+        String name = className(index);
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        cw.visitSource(name.substring(name.lastIndexOf('/') + 1) + ".java", null);
+        cw.visitField(ACC_PRIVATE | ACC_STATIC, "counter", "I", null, null).visitEnd();
+        for (int i = 0; i < methodsPerClass; i++) {
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "method" + i, "()V", null, null);
+            mv.visitCode();
+            for (int j = 0; j < methodSize; j++) {
+                Label line = new Label();
+                mv.visitLabel(line);
+                mv.visitLineNumber(i * methodSize + j + 1, line);
+                if (rand.nextDouble() < hitDensity) {
+                    emitHit(mv, rand.nextInt(HIT_KINDS));
+                } else {
+                    emitFiller(mv, name, rand.nextInt(FILLER_KINDS));
+                }
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void emitFiller(MethodVisitor mv, String owner, int kind) {
+        switch (kind) {
+            case 0 -> {
+                mv.visitFieldInsn(GETSTATIC, owner, "counter", "I");
+                mv.visitInsn(ICONST_1);
+                mv.visitInsn(IADD);
+                mv.visitFieldInsn(PUTSTATIC, owner, "counter", "I");
+            }
+            case 1 -> {
+                mv.visitFieldInsn(GETSTATIC, owner, "counter", "I");
+                mv.visitIntInsn(BIPUSH, 42);
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "max", "(II)I", false);
+                mv.visitInsn(POP);
+            }
+            case 2 -> {
+                mv.visitTypeInsn(NEW, "java/lang/StringBuilder");
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V", false);
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+                mv.visitInsn(POP);
+            }
+            case 3 -> {
+                mv.visitLdcInsn("filler");
+                mv.visitTypeInsn(CHECKCAST, "java/lang/CharSequence");
+                mv.visitInsn(POP);
+            }
+            default -> throw new IllegalArgumentException("Unknown filler kind: " + kind);
+        }
+    }
+
+    private static void emitHit(MethodVisitor mv, int kind) {
+        switch (kind) {
+            case 0 -> {
+                mv.visitLdcInsn("java.lang.Object");
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Class", "forName", "(Ljava/lang/String;)Ljava/lang/Class;", false);
+                mv.visitInsn(POP);
+            }
+            case 1 -> {
+                mv.visitInsn(ACONST_NULL);
+                mv.visitInsn(ACONST_NULL);
+                mv.visitInsn(ICONST_0);
+                mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Method", "invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", false);
+                mv.visitInsn(POP);
+            }
+            case 2 -> {
+                mv.visitInsn(ACONST_NULL);
+                mv.visitTypeInsn(CHECKCAST, "sun/misc/Unsafe");
+                mv.visitInsn(POP);
+            }
+            case 3 -> {
+                mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                mv.visitInsn(POP);
+            }
+            case 4 -> {
+                mv.visitLdcInsn("lock");
+                mv.visitInsn(DUP);
+                mv.visitInsn(MONITORENTER);
+                mv.visitInsn(MONITOREXIT);
+            }
+            default -> throw new IllegalArgumentException("Unknown hit kind: " + kind);
+        }
+    }
+
+    private static String className(int index) {
+        return PACKAGE + "Generated" + index;
+    }
+}
@@ -0,0 +1,110 @@
+package net.covers1624.bcs.bench;
+
+import net.covers1624.quack.io.IOUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Measures reading every class out of a generated jar, without scanning them.
+ * <p>
+ * Compares walking the jar mounted as a zip {@link FileSystem}, which is how jars
+ * used to be read, against listing the entries of a {@link ZipFile} and reading
+ * each one into an array sized from the central directory, which is how the
+ * {@link net.covers1624.bcs.input.InputWalker} reads them now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JarReadBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path dir;
+    private Path jar;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bcs-bench");
+        jar = dir.resolve("corpus.jar");
+
+        CorpusGenerator generator = new CorpusGenerator(0);
+        generator.setClassCount(classes);
+        generator.writeJar(jar);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchUtils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public long zipFileSystem() throws IOException {
+        AtomicLong total = new AtomicLong();
+        try (FileSystem fs = IOUtils.getJarFileSystem(jar, true);
+             Stream<Path> files = Files.walk(fs.getPath("/"))) {
+            stream(files)
+                    .filter(e -> e.getFileName() != null && e.getFileName().toString().endsWith(".class"))
+                    .forEach(e -> total.addAndGet(readAllBytes(e).length));
+        }
+        return total.get();
+    }
+
+    @Benchmark
+    public long zipFile() throws IOException {
+        AtomicLong total = new AtomicLong();
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            List<? extends ZipEntry> entries = zip.stream()
+                    .filter(e -> !e.isDirectory() && e.getName().endsWith(".class"))
+                    .toList();
+            stream(entries.stream())
+                    .forEach(e -> total.addAndGet(readEntry(zip, e).length));
+        }
+        return total.get();
+    }
+
+    private <T> Stream<T> stream(Stream<T> stream) {
+        return parallel ? stream.parallel() : stream;
+    }
+
+    private static byte[] readAllBytes(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry) {
+        try (InputStream is = zip.getInputStream(entry)) {
+            int size = (int) entry.getSize();
+            if (size < 0) return is.readAllBytes();
+
+            byte[] bytes = new byte[size];
+            int len = is.readNBytes(bytes, 0, size);
+            if (len != size) throw new EOFException("Expected " + size + " bytes, got " + len);
+            return bytes;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
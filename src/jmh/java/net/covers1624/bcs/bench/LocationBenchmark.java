@@ -0,0 +1,71 @@
+package net.covers1624.bcs.bench;
+
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.scanners.OpcodeUseScanner;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Regression benchmark for reporting the location of results, a single huge
+ * method where every instruction is a hit. Reporting each hit should cost
+ * constant time, so this should scale linearly with {@code instructions}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocationBenchmark {
+
+    @Param({"5000", "50000"})
+    public int instructions;
+
+    @Param({"tree", "streaming"})
+    public String engine;
+
+    private byte[] bytes;
+    private ScanEngine scanEngine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, "Huge", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "huge", "()V", null, null);
+        mv.visitCode();
+        for (int i = 0; i < instructions / 2; i++) {
+            if (i % 10 == 0) {
+                Label line = new Label();
+                mv.visitLabel(line);
+                mv.visitLineNumber(i / 10 + 1, line);
+            }
+            mv.visitInsn(ACONST_NULL);
+            mv.visitInsn(POP);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        bytes = cw.toByteArray();
+
+        ScanPlan plan = new ScanPlan(Set.of(), Map.of("all", List.of(new OpcodeUseScanner(List.of(ACONST_NULL, POP)))));
+        scanEngine = BenchUtils.engineFactory(engine).apply(plan);
+    }
+
+    @Benchmark
+    public Map<String, List<ScanResult>> scanClass() {
+        return scanEngine.scanClass(new ClassReader(bytes));
+    }
+}
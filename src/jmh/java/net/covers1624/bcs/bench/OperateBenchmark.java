@@ -0,0 +1,64 @@
+package net.covers1624.bcs.bench;
+
+import net.covers1624.bcs.BadCodeScanner;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BadCodeScanner#operate} end to end over a generated jar,
+ * including reading, the constant pool prefilter and collecting results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OperateBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"50"})
+    public int methodSize;
+
+    @Param({"0.0", "0.001", "0.05"})
+    public double hitDensity;
+
+    @Param({"tree", "streaming"})
+    public String engine;
+
+    private Path dir;
+    private Path jar;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bcs-bench");
+        jar = dir.resolve("corpus.jar");
+
+        CorpusGenerator generator = new CorpusGenerator(0);
+        generator.setClassCount(classes);
+        generator.setMethodSize(methodSize);
+        generator.setHitDensity(hitDensity);
+        generator.writeJar(jar);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchUtils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, List<ScanResult>>> operate() throws IOException {
+        BadCodeScanner scanner = BenchUtils.newScanner(dir, engine);
+        scanner.operate(jar);
+        return scanner.getScanResults();
+    }
+}
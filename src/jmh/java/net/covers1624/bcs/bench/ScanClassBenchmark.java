@@ -0,0 +1,74 @@
+package net.covers1624.bcs.bench;
+
+import net.covers1624.bcs.engine.ConstantPoolFilter;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scanning a single class already in memory, the work done
+ * by each scan worker per class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanClassBenchmark {
+
+    @Param({"10"})
+    public int methods;
+
+    @Param({"50", "500"})
+    public int methodSize;
+
+    @Param({"0.001", "0.05"})
+    public double hitDensity;
+
+    @Param({"tree", "streaming"})
+    public String engine;
+
+    private byte[] bytes;
+    private ConstantPoolFilter filter;
+    private ScanEngine scanEngine;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(0);
+        generator.setMethodsPerClass(methods);
+        generator.setMethodSize(methodSize);
+        generator.setHitDensity(hitDensity);
+        bytes = generator.generateClass(0);
+
+        Path dir = Files.createTempDirectory("bcs-bench");
+        try {
+            ScanPlan plan = BenchUtils.newScanner(dir, engine).getPlan();
+            filter = plan.getConstantPoolFilter();
+            scanEngine = BenchUtils.engineFactory(engine).apply(plan);
+        } finally {
+            BenchUtils.deleteDir(dir);
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<ScanResult>> scanClass() {
+        ClassReader reader = new ClassReader(bytes);
+        if (!filter.mayMatch(reader)) return Map.of();
+        return scanEngine.scanClass(reader);
+    }
+
+    @Benchmark
+    public boolean constantPoolFilter() {
+        return filter.mayMatch(new ClassReader(bytes));
+    }
+}
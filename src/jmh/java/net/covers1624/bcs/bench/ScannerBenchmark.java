@@ -0,0 +1,101 @@
+package net.covers1624.bcs.bench;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.covers1624.bcs.BadCodeScanner;
+import net.covers1624.bcs.scanners.ScanContext;
+import net.covers1624.bcs.scanners.Scanner;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures each {@link Scanner} implementation on its own, over every
+ * instruction in a generated class which it would be dispatched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark {
+
+    private static final ScanContext CONTEXT = new ScanContext() {
+        private final Location location = new Location(-1, 0);
+
+        // @formatter:off
+        @Override public String getClassName() { return "Generated"; }
+        @Override public int getClassAccess() { return Opcodes.ACC_PUBLIC; }
+        @Override public String getMethodName() { return "method"; }
+        @Override public String getMethodDesc() { return "()V"; }
+        @Override public int getMethodAccess() { return Opcodes.ACC_PUBLIC; }
+        @Override public Location getLocation() { return location; }
+        @Override public MethodNode getMethodNode() { throw new UnsupportedOperationException(); }
+        @Override public <T> T getMethodData(Object key, Supplier<T> factory) { throw new UnsupportedOperationException(); }
+        // @formatter:on
+    };
+
+    @Param({"method_use", "field_use", "opcode_use", "type_use"})
+    public String scannerType;
+
+    @Param({"0.001", "0.05"})
+    public double hitDensity;
+
+    private Scanner scanner;
+    private AbstractInsnNode[] insns;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        scanner = findScanner(scannerType);
+
+        CorpusGenerator generator = new CorpusGenerator(0);
+        generator.setMethodSize(500);
+        generator.setHitDensity(hitDensity);
+        ClassNode cNode = new ClassNode();
+        new ClassReader(generator.generateClass(0)).accept(cNode, ClassReader.SKIP_FRAMES);
+
+        // Only the instructions the engine would actually dispatch to this scanner.
+        IntSet opcodes = scanner.getOpcodes();
+        List<AbstractInsnNode> insns = new ArrayList<>();
+        for (MethodNode mNode : cNode.methods) {
+            for (AbstractInsnNode insn : mNode.instructions) {
+                if (insn.getOpcode() != -1 && opcodes.contains(insn.getOpcode())) {
+                    insns.add(insn);
+                }
+            }
+        }
+        this.insns = insns.toArray(new AbstractInsnNode[0]);
+    }
+
+    @Benchmark
+    public void scan(Blackhole bh) {
+        for (AbstractInsnNode insn : insns) {
+            bh.consume(scanner.scan(insn, CONTEXT));
+        }
+    }
+
+    private static Scanner findScanner(String type) {
+        JsonObject groups = JsonParser.parseString(CorpusGenerator.CONFIG).getAsJsonObject().getAsJsonObject("groups");
+        for (Map.Entry<String, JsonElement> group : groups.entrySet()) {
+            JsonElement config = group.getValue().getAsJsonObject().get(type);
+            if (config != null) {
+                return BadCodeScanner.DEFAULT_SCANNERS.get(type).apply(config);
+            }
+        }
+        throw new IllegalArgumentException("No config for scanner: " + type);
+    }
+}
@@ -1,33 +1,51 @@
 package net.covers1624.bcs;
 
-import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.google.gson.*;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import joptsimple.util.EnumConverter;
+import joptsimple.util.PathConverter;
+import net.covers1624.bcs.cache.ScanCache;
+import net.covers1624.bcs.daemon.DaemonClient;
+import net.covers1624.bcs.daemon.ScanDaemon;
+import net.covers1624.bcs.daemon.ScanRequest;
+import net.covers1624.bcs.engine.ConstantPoolFilter;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.engine.StreamingScanEngine;
+import net.covers1624.bcs.engine.TreeScanEngine;
+import net.covers1624.bcs.input.ClassWatcher;
+import net.covers1624.bcs.input.InputWalker;
+import net.covers1624.bcs.input.ScanPipeline;
+import net.covers1624.bcs.input.Shard;
+import net.covers1624.bcs.metrics.ScanMetrics;
+import net.covers1624.bcs.results.PartialResults;
+import net.covers1624.bcs.results.ReportFormat;
+import net.covers1624.bcs.results.ReportWriter;
+import net.covers1624.bcs.results.ResultStore;
 import net.covers1624.bcs.scanners.*;
 import net.covers1624.bcs.scanners.Scanner;
 import net.covers1624.bcs.scanners.Scanner.ScanResult;
-import net.covers1624.quack.collection.StreamableIterable;
+import net.covers1624.bcs.util.ClassHierarchy;
 import net.covers1624.quack.gson.JsonUtils;
-import net.covers1624.quack.io.IOUtils;
-import net.covers1624.quack.util.SneakyUtils;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.AnnotationNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 
-import static net.covers1624.quack.util.SneakyUtils.unsafeCast;
+import static java.util.Arrays.asList;
 
 /**
  * Created by covers1624 on 13/6/22.
@@ -37,169 +55,1122 @@ public class BadCodeScanner {
     private static final Logger LOGGER = LogManager.getLogger();
     private static final Gson GSON = new GsonBuilder().setLenient().create();
 
+    /**
+     * The scanners available from the command line, keyed by their config name.
+     */
+    public static final Map<String, Function<JsonElement, Scanner>> DEFAULT_SCANNERS = Map.of(
+            "method_use", MethodUseScanner::new,
+            "field_use", FieldUseScanner::new,
+            "opcode_use", OpcodeUseScanner::new,
+            "type_use", TypeUseScanner::new,
+            "reflection_use", ReflectionUseScanner::new,
+            "transitive_method_use", TransitiveMethodUseScanner::new
+    );
+
     private final Map<String, Function<JsonElement, Scanner>> scannerFactories;
 
-    private final Set<String> ignoreAnnotations = new HashSet<>();
-    private final Map<String, List<Scanner>> scanners = new HashMap<>();
-    private final Map<String, Map<String, List<ScanResult>>> scanResults = new ConcurrentHashMap<>();
+    private ScanPlan plan = new ScanPlan(Set.of(), Map.of());
+    private Function<ScanPlan, ScanEngine> engineFactory = TreeScanEngine::new;
+    private ScanEngine engine = engineFactory.apply(plan);
+    private HashCode configHash = ScanCache.hashConfig("");
+    private boolean matchInherited;
+    private BitSet inheritedConfigs = new BitSet();
+    private List<Path> libraries = List.of();
+    @Nullable
+    private ClassHierarchy hierarchy;
+    private ConstantPoolFilter constantPoolFilter = plan.getConstantPoolFilter();
+    @Nullable
+    private Path cacheFile;
+    @Nullable
+    private ScanCache cache;
+    @Nullable
+    private HashCode cacheHash;
+    @Nullable
+    private Path reportFile;
+    private Map<String, Path> reportFiles = Map.of();
+    private ReportFormat reportFormat = ReportFormat.JSONL;
+    private boolean metricsEnabled;
+    @Nullable
+    private Path metricsFile;
+    @Nullable
+    private ScanMetrics metrics;
+    @Nullable
+    private Path workingDir;
+    private int maxResults = -1;
+    private boolean retainResults;
+    @Nullable
+    private Shard shard;
+    @Nullable
+    private Path shardOutput;
+    private int ioThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private int scanThreads = Runtime.getRuntime().availableProcessors();
+
+    // One per config of the plan, only written to from the pipeline's sink.
+    private List<ConfigOutput> outputs = List.of(new ConfigOutput(""));
+    private List<Map<String, List<ScanResult>>> noResults = List.of(Map.of());
+    private int foundResults;
+    private boolean resultLimitExceeded;
+    @Nullable
+    private ScanPipeline<ClassResults> activePipeline;
+    private final AtomicInteger scannedClasses = new AtomicInteger();
+    private final AtomicInteger skippedClasses = new AtomicInteger();
+    private final AtomicInteger cachedClasses = new AtomicInteger();
 
     public BadCodeScanner(Map<String, Function<JsonElement, Scanner>> scannerFactories) {
         this.scannerFactories = scannerFactories;
     }
 
     public static void main(String[] args) throws IOException {
-        BadCodeScanner scanner = new BadCodeScanner(Map.of(
-                "method_use", MethodUseScanner::new,
-                "field_use", FieldUseScanner::new,
-                "opcode_use", OpcodeUseScanner::new,
-                "type_use", TypeUseScanner::new
-        ));
-
-        scanner.setup(Path.of("./config.json"));
-        scanner.operate(Path.of(args[0]));
+        if (args.length != 0 && args[0].equals("merge")) {
+            merge(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        OptionParser parser = new OptionParser();
+        OptionSpec<Void> helpOpt = parser.acceptsAll(asList("h", "help"), "Prints this help.").forHelp();
+        OptionSpec<String> configOpt = parser.acceptsAll(asList("c", "config"), "A config file to use, optionally named with name=file. May be given more than once, every config is scanned in a single pass. Defaults to the file name.")
+                .withRequiredArg()
+                .defaultsTo("./config.json");
+        OptionSpec<Path> cacheOpt = parser.accepts("cache", "A file to cache results in between runs. Only changed classes are re-scanned.")
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        OptionSpec<String> reportOpt = parser.accepts("report", "A file to write results to as they are found, instead of logging them. With several configs, given once per config as name=file.")
+                .withRequiredArg();
+        OptionSpec<ReportFormat> reportFormatOpt = parser.accepts("report-format", "The format of the report. One of: jsonl, sarif.")
+                .availableIf(reportOpt)
+                .withRequiredArg()
+                .withValuesConvertedBy(new EnumConverter<>(ReportFormat.class) { })
+                .defaultsTo(ReportFormat.JSONL);
+        OptionSpec<Path> daemonOpt = parser.accepts("daemon", "Run as a daemon, accepting scan requests on the given unix domain socket.")
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        OptionSpec<Path> connectOpt = parser.accepts("connect", "Send the scan to a daemon listening on the given unix domain socket.")
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        // Requests sent to a daemon only carry the inputs and report, the rest would be ignored.
+        OptionSpec<Void> metricsOpt = parser.accepts("metrics", "Record where the time goes whilst scanning, and emit JFR events.")
+                .availableUnless(daemonOpt, connectOpt);
+        OptionSpec<Path> metricsFileOpt = parser.accepts("metrics-file", "A file to write a JSON summary of the metrics to. Implies --metrics.")
+                .availableUnless(daemonOpt, connectOpt)
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        OptionSpec<Path> libraryOpt = parser.accepts("library", "A jar or directory of library classes, used to resolve supertypes when matching inherited members.")
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        OptionSpec<Integer> ioThreadsOpt = parser.accepts("io-threads", "The maximum number of concurrent reads.")
+                .withRequiredArg()
+                .ofType(Integer.class);
+        OptionSpec<Integer> scanThreadsOpt = parser.accepts("scan-threads", "The number of threads used to parse and scan classes.")
+                .withRequiredArg()
+                .ofType(Integer.class);
+        OptionSpec<Void> streamingOpt = parser.accepts("streaming", "Scan classes as they are read, instead of building ClassNode trees.");
+        OptionSpec<Void> watchOpt = parser.accepts("watch", "Keep running, re-scanning class files in the input directories as they change.");
+        OptionSpec<Void> failFastOpt = parser.accepts("fail-fast", "Stop scanning at the first result, exiting with code 1.")
+                .availableUnless(watchOpt, daemonOpt, connectOpt);
+        OptionSpec<Integer> maxResultsOpt = parser.accepts("max-results", "Stop scanning once more than this many results are found, exiting with code 1.")
+                .availableUnless(watchOpt, failFastOpt, daemonOpt, connectOpt)
+                .withRequiredArg()
+                .ofType(Integer.class);
+        OptionSpec<String> shardOpt = parser.accepts("shard", "Only scan one slice of the classes, in the form index/count. Use 'merge' to combine the results of every shard. Shards running at once should not share a cache file.")
+                .availableUnless(watchOpt, reportOpt, failFastOpt, maxResultsOpt, daemonOpt, connectOpt)
+                .withRequiredArg();
+        OptionSpec<Path> shardOutputOpt = parser.accepts("shard-output", "The file to write the results of this shard to.")
+                .requiredIf(shardOpt)
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        OptionSpec<Path> inputOpt = parser.nonOptions("The jars or directories to scan.")
+                .withValuesConvertedBy(new PathConverter());
+
+        OptionSet optSet = parser.parse(args);
+        if (optSet.has(helpOpt) || !optSet.has(inputOpt) && !optSet.has(daemonOpt)) {
+            parser.printHelpOn(System.err);
+            System.exit(-1);
+        }
+
+        Map<String, Path> configs = parseNamed(optSet.valuesOf(configOpt), BadCodeScanner::getConfigName);
+        Map<String, Path> reports = parseNamed(optSet.valuesOf(reportOpt), e -> "");
+        if (optSet.has(connectOpt) || optSet.has(daemonOpt)) {
+            if (configs.size() != 1 || reports.size() > 1 || !reports.isEmpty() && !reports.containsKey("")) {
+                throw new IllegalArgumentException("The daemon only supports a single config and report.");
+            }
+        }
+
+        if (optSet.has(connectOpt)) {
+            Path report = reports.get("");
+            ScanRequest request = new ScanRequest(
+                    Path.of("").toAbsolutePath(),
+                    optSet.valuesOf(inputOpt),
+                    report != null ? report.toAbsolutePath() : null,
+                    optSet.valueOf(reportFormatOpt)
+            );
+            DaemonClient.scan(optSet.valueOf(connectOpt), request, (level, msg) -> LOGGER.log(level, msg));
+            return;
+        }
+
+        Supplier<BadCodeScanner> factory = () -> {
+            BadCodeScanner scanner = new BadCodeScanner(DEFAULT_SCANNERS);
+            if (optSet.has(streamingOpt)) {
+                scanner.setEngineFactory(StreamingScanEngine::new);
+            }
+            if (optSet.has(ioThreadsOpt)) {
+                scanner.setIoThreads(optSet.valueOf(ioThreadsOpt));
+            }
+            if (optSet.has(scanThreadsOpt)) {
+                scanner.setScanThreads(optSet.valueOf(scanThreadsOpt));
+            }
+            scanner.setCacheFile(optSet.valueOf(cacheOpt));
+            scanner.setLibraries(optSet.valuesOf(libraryOpt));
+            return scanner;
+        };
+
+        if (optSet.has(daemonOpt)) {
+            new ScanDaemon(optSet.valueOf(daemonOpt), configs.values().iterator().next(), factory).run();
+            return;
+        }
+
+        BadCodeScanner scanner = factory.get();
+        Path unnamedReport = reports.remove("");
+        scanner.setReport(unnamedReport, optSet.valueOf(reportFormatOpt));
+        scanner.setReports(reports, optSet.valueOf(reportFormatOpt));
+        if (optSet.has(shardOpt)) {
+            scanner.setShard(Shard.parse(optSet.valueOf(shardOpt)), optSet.valueOf(shardOutputOpt));
+        }
+        scanner.setMetrics(optSet.has(metricsOpt), optSet.valueOf(metricsFileOpt));
+        if (optSet.has(failFastOpt)) {
+            scanner.setMaxResults(0);
+        } else if (optSet.has(maxResultsOpt)) {
+            scanner.setMaxResults(optSet.valueOf(maxResultsOpt));
+        }
+        scanner.setRetainResults(optSet.has(watchOpt));
+        scanner.setup(configs);
+        scanner.operate(optSet.valuesOf(inputOpt));
+        scanner.printResults();
+        if (optSet.has(watchOpt)) {
+            scanner.watch(optSet.valuesOf(inputOpt));
+        } else if (scanner.isResultLimitExceeded()) {
+            System.exit(1);
+        }
+    }
+
+    private static void merge(String[] args) throws IOException {
+        OptionParser parser = new OptionParser();
+        OptionSpec<Void> helpOpt = parser.acceptsAll(asList("h", "help"), "Prints this help.").forHelp();
+        OptionSpec<Path> reportOpt = parser.accepts("report", "A file to write results to, instead of logging them.")
+                .withRequiredArg()
+                .withValuesConvertedBy(new PathConverter());
+        OptionSpec<ReportFormat> reportFormatOpt = parser.accepts("report-format", "The format of the report. One of: jsonl, sarif.")
+                .availableIf(reportOpt)
+                .withRequiredArg()
+                .withValuesConvertedBy(new EnumConverter<>(ReportFormat.class) { })
+                .defaultsTo(ReportFormat.JSONL);
+        OptionSpec<Path> shardsOpt = parser.nonOptions("The result files of every shard.")
+                .withValuesConvertedBy(new PathConverter());
+
+        OptionSet optSet = parser.parse(args);
+        if (optSet.has(helpOpt) || !optSet.has(shardsOpt)) {
+            parser.printHelpOn(System.err);
+            System.exit(-1);
+        }
+
+        BadCodeScanner scanner = new BadCodeScanner(DEFAULT_SCANNERS);
+        scanner.setReport(optSet.valueOf(reportOpt), optSet.valueOf(reportFormatOpt));
+        scanner.merge(optSet.valuesOf(shardsOpt));
         scanner.printResults();
     }
 
     public void setup(Path config) throws IOException {
-        JsonObject obj = JsonUtils.parse(GSON, config, JsonObject.class);
+        setup(Map.of(getConfigName(config), config));
+    }
+
+    /**
+     * Set up several configs, scanned together in a single pass.
+     * <p>
+     * Each class is read and parsed once, and passed to the rules of every config.
+     * Each config keeps its own {@code ignore_annotations}, and its own results, see
+     * {@link #setReports} and {@link #getScanResults(String)}.
+     *
+     * @param configs The config files, keyed by name, in the order to report them.
+     * @throws IOException If an IO error occurs.
+     */
+    public void setup(Map<String, Path> configs) throws IOException {
+        if (configs.isEmpty()) throw new IllegalArgumentException("Expected at least one config.");
 
-        if (obj.has("settings")) {
-            JsonObject settings = obj.getAsJsonObject("settings");
-            if (settings.has("ignore_annotations")) {
-                for (JsonElement element : settings.getAsJsonArray("ignore_annotations")) {
-                    ignoreAnnotations.add(element.getAsString());
+        HashCode configHash = ScanCache.hashConfig("");
+        List<ScanPlan.Config> planConfigs = new ArrayList<>(configs.size());
+        BitSet inheritedConfigs = new BitSet();
+        for (Map.Entry<String, Path> entry : configs.entrySet()) {
+            JsonObject obj = JsonUtils.parse(GSON, entry.getValue(), JsonObject.class);
+            configHash = ScanCache.hashConfig(configHash + (configs.size() > 1 ? entry.getKey() + "=" : "") + obj);
+
+            Set<String> ignoreAnnotations = new HashSet<>();
+            if (obj.has("settings")) {
+                JsonObject settings = obj.getAsJsonObject("settings");
+                if (settings.has("match_inherited") && settings.get("match_inherited").getAsBoolean()) {
+                    inheritedConfigs.set(planConfigs.size());
+                }
+                if (settings.has("ignore_annotations")) {
+                    for (JsonElement element : settings.getAsJsonArray("ignore_annotations")) {
+                        ignoreAnnotations.add(element.getAsString());
+                    }
                 }
             }
-        }
 
-        if (!obj.has("groups")) throw new JsonSyntaxException("Expected 'groups' object.");
-        for (Map.Entry<String, JsonElement> groupEntry : obj.getAsJsonObject("groups").entrySet()) {
-            String groupName = groupEntry.getKey();
-            List<Scanner> scanners = new LinkedList<>();
+            if (!obj.has("groups")) throw new JsonSyntaxException("Expected 'groups' object in config '" + entry.getKey() + "'.");
+            Map<String, List<Scanner>> groups = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> groupEntry : obj.getAsJsonObject("groups").entrySet()) {
+                String groupName = groupEntry.getKey();
+                List<Scanner> scanners = new LinkedList<>();
+
+                for (Map.Entry<String, JsonElement> scannerEntry : groupEntry.getValue().getAsJsonObject().entrySet()) {
+                    String scannerType = scannerEntry.getKey();
+                    Function<JsonElement, Scanner> factory = scannerFactories.get(scannerType);
+                    if (factory == null) {
+                        LOGGER.warn("Unknown scanner type: " + scannerType);
+                        continue;
+                    }
 
-            for (Map.Entry<String, JsonElement> scannerEntry : groupEntry.getValue().getAsJsonObject().entrySet()) {
-                String scannerType = scannerEntry.getKey();
-                Function<JsonElement, Scanner> factory = scannerFactories.get(scannerType);
-                if (factory == null) {
-                    LOGGER.warn("Unknown scanner type: " + scannerType);
-                    continue;
+                    scanners.add(factory.apply(scannerEntry.getValue()));
                 }
 
-                scanners.add(factory.apply(scannerEntry.getValue()));
+                groups.put(groupName, scanners);
             }
+            planConfigs.add(new ScanPlan.Config(entry.getKey(), ignoreAnnotations, groups));
+        }
+
+        this.configHash = configHash;
+        cache = null;
+        this.inheritedConfigs = inheritedConfigs;
+        matchInherited = !inheritedConfigs.isEmpty();
+        plan = new ScanPlan(planConfigs);
+        engine = engineFactory.apply(plan);
+        hierarchy = null;
+        constantPoolFilter = plan.getConstantPoolFilter();
+
+        List<ConfigOutput> outputs = new ArrayList<>(planConfigs.size());
+        for (ScanPlan.Config config : planConfigs) {
+            outputs.add(new ConfigOutput(config.name()));
+        }
+        this.outputs = List.copyOf(outputs);
+        noResults = Collections.nCopies(outputs.size(), Map.of());
+        assignReports();
+    }
+
+    // The name of a config given without one, its file name without the extension.
+    private static String getConfigName(Path config) {
+        String name = config.getFileName().toString();
+        return name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+    }
+
+    // Split the values of an option in the form name=file, or just file.
+    private static Map<String, Path> parseNamed(List<String> values, Function<Path, String> defaultName) {
+        Map<String, Path> named = new LinkedHashMap<>();
+        for (String value : values) {
+            int eq = value.indexOf('=');
+            Path file = Path.of(value.substring(eq + 1));
+            String name = eq != -1 ? value.substring(0, eq) : defaultName.apply(file);
+            if (named.put(name, file) != null) {
+                throw new IllegalArgumentException("Name given more than once: '" + name + "', name each file in the form name=file.");
+            }
+        }
+        return named;
+    }
+
+    /**
+     * @return The plan compiled from the config passed to {@link #setup}.
+     */
+    public ScanPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Set the factory used to create the {@link ScanEngine}.
+     * <p>
+     * Defaults to {@link TreeScanEngine}.
+     *
+     * @param engineFactory The factory.
+     */
+    public void setEngineFactory(Function<ScanPlan, ScanEngine> engineFactory) {
+        this.engineFactory = engineFactory;
+        engine = engineFactory.apply(plan);
+    }
+
+    /**
+     * Set the file used to cache results between runs.
+     * <p>
+     * Changing the config invalidates the cache.
+     *
+     * @param cacheFile The cache file, or {@code null} to disable caching.
+     */
+    public void setCacheFile(@Nullable Path cacheFile) {
+        this.cacheFile = cacheFile;
+        cache = null;
+    }
+
+    /**
+     * Set the library classes used to resolve supertypes, when the config
+     * enables {@code match_inherited}. Libraries are not scanned.
+     *
+     * @param libraries The jars or directories.
+     */
+    public void setLibraries(List<Path> libraries) {
+        this.libraries = List.copyOf(libraries);
+    }
 
-            this.scanners.put(groupName, scanners);
+    /**
+     * Set the file to stream results to.
+     * <p>
+     * Whilst a report is set, results are written out as each class finishes and
+     * are not kept in memory. {@link #getScanResults()} will be empty.
+     * <p>
+     * Only usable with a single config, see {@link #setReports} for several.
+     *
+     * @param reportFile The file, or {@code null} to keep results in memory.
+     * @param format     The format of the report.
+     */
+    public void setReport(@Nullable Path reportFile, ReportFormat format) {
+        this.reportFile = reportFile;
+        reportFormat = format;
+        assignReports();
+    }
+
+    /**
+     * Set the files to stream the results of each config to, see {@link #setReport}.
+     * <p>
+     * Configs without a report keep their results in memory.
+     *
+     * @param reportFiles The files, keyed by config name.
+     * @param format      The format of the reports.
+     */
+    public void setReports(Map<String, Path> reportFiles, ReportFormat format) {
+        this.reportFiles = Map.copyOf(reportFiles);
+        reportFormat = format;
+        assignReports();
+    }
+
+    private void assignReports() {
+        for (ConfigOutput output : outputs) {
+            Path file = reportFiles.get(output.name);
+            output.reportFile = file != null ? file : outputs.size() == 1 ? reportFile : null;
+        }
+    }
+
+    /**
+     * Enable scan metrics.
+     * <p>
+     * Whilst enabled, time is recorded per scanner, group and stage, and JFR
+     * events are emitted for each class. A summary is logged after each scan.
+     *
+     * @param enabled If metrics should be recorded.
+     * @param file    A file to write the summary to as JSON, or {@code null}.
+     */
+    public void setMetrics(boolean enabled, @Nullable Path file) {
+        metricsEnabled = enabled || file != null;
+        metricsFile = file;
+    }
+
+    /**
+     * @return The metrics of the last scan, or {@code null} if metrics are disabled.
+     */
+    @Nullable
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the directory relative inputs are resolved against.
+     * <p>
+     * Results are still prefixed with inputs as given.
+     *
+     * @param workingDir The directory, or {@code null} for the current directory.
+     */
+    public void setWorkingDir(@Nullable Path workingDir) {
+        this.workingDir = workingDir;
+    }
+
+    /**
+     * Set the number of results a scan may find before it is stopped.
+     * <p>
+     * Once exceeded, every worker and input walk stops as soon as it can. Results are
+     * kept for the classes which finished before then, a class's results are never
+     * split. Whole program scanners are skipped, as they would only see part of the program.
+     *
+     * @param maxResults The number of results allowed, {@code 0} to stop at the first,
+     *                   or {@code -1} for no limit.
+     */
+    public void setMaxResults(int maxResults) {
+        if (maxResults < -1) throw new IllegalArgumentException("Expected -1 or a positive number of results.");
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Keep every result in memory, even for configs writing a report. Reports are then
+     * written in full once each scan finishes, instead of as results arrive.
+     * <p>
+     * Required by {@link #watch}, so reports can be rewritten after each change.
+     *
+     * @param retainResults If results should be retained.
+     */
+    public void setRetainResults(boolean retainResults) {
+        this.retainResults = retainResults;
+    }
+
+    /**
+     * @return If the last scan found more results than allowed by {@link #setMaxResults}, and was stopped.
+     */
+    public boolean isResultLimitExceeded() {
+        return resultLimitExceeded;
+    }
+
+    /**
+     * Only scan a single shard of the classes, writing the results to a file for {@link #merge}.
+     * <p>
+     * Whilst a shard is set, results are only written to the shard's file. Whole program
+     * scanners can't be sharded, as each shard only sees part of the program.
+     *
+     * @param shard  The shard, or {@code null} to scan every class.
+     * @param output The file to write the shard's results to.
+     */
+    public void setShard(@Nullable Shard shard, @Nullable Path output) {
+        if (shard != null && output == null) throw new IllegalArgumentException("Expected an output file for the shard.");
+        this.shard = shard;
+        shardOutput = shard != null ? output : null;
+    }
+
+    /**
+     * Merge the results written by every shard of a scan, see {@link #setShard}.
+     * <p>
+     * Results are reported as a single process scanning every class would report them,
+     * to the report if one is set.
+     *
+     * @param files The result files, one per shard.
+     * @throws IOException If an IO error occurs.
+     */
+    public void merge(List<Path> files) throws IOException {
+        if (outputs.size() != 1) throw new IllegalStateException("Shards only hold the results of a single config.");
+
+        List<PartialResults> shards = new ArrayList<>(files.size());
+        for (Path file : files) {
+            shards.add(PartialResults.read(resolve(file)));
+        }
+        PartialResults first = shards.get(0);
+        BitSet seen = new BitSet();
+        for (PartialResults partial : shards) {
+            if (!partial.configHash().equals(first.configHash())) throw new IllegalArgumentException("Shards were scanned with different configs.");
+            if (partial.shardCount() != first.shardCount()) throw new IllegalArgumentException("Shards disagree on the number of shards, " + partial.shardCount() + " and " + first.shardCount() + ".");
+            if (seen.get(partial.shardIndex())) throw new IllegalArgumentException("Shard " + partial.shardIndex() + " given more than once.");
+            if (!partial.complete()) throw new IllegalArgumentException("Shard " + partial.shardIndex() + " was stopped before scanning every class.");
+            seen.set(partial.shardIndex());
+        }
+        if (shards.size() != first.shardCount()) throw new IllegalArgumentException("Expected " + first.shardCount() + " shards, got " + shards.size() + ".");
+
+        List<PartialResults.Entry> entries = new ArrayList<>();
+        for (PartialResults partial : shards) {
+            entries.addAll(partial.entries());
+            scannedClasses.addAndGet((int) partial.scannedClasses());
+            cachedClasses.addAndGet((int) partial.cachedClasses());
+            skippedClasses.addAndGet((int) partial.skippedClasses());
+        }
+        entries.sort(Comparator.comparingLong(PartialResults.Entry::index));
+        try {
+            openReports();
+            for (PartialResults.Entry entry : entries) {
+                addResults(null, new ClassResults(entry.index(), entry.className(), List.of(entry.results())));
+            }
+        } finally {
+            closeReports();
         }
+        LOGGER.info("Merged the results of {} shards.", shards.size());
+    }
+
+    /**
+     * Set the maximum number of class reads in flight at once.
+     * <p>
+     * Reads are performed on virtual threads when the runtime supports them.
+     *
+     * @param ioThreads The number of reads.
+     */
+    public void setIoThreads(int ioThreads) {
+        if (ioThreads < 1) throw new IllegalArgumentException("Expected at least 1 IO thread.");
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Set the number of threads used to parse and scan classes.
+     * <p>
+     * Defaults to the number of available processors.
+     *
+     * @param scanThreads The number of threads.
+     */
+    public void setScanThreads(int scanThreads) {
+        if (scanThreads < 1) throw new IllegalArgumentException("Expected at least 1 scan thread.");
+        this.scanThreads = scanThreads;
     }
 
     public void operate(Path location) throws IOException {
-        if (Files.isDirectory(location)) {
-            scanRootDir(location);
-        } else if (location.getFileName().toString().endsWith(".jar")) {
-            try (FileSystem fs = IOUtils.getJarFileSystem(location, true)) {
-                scanRootDir(fs.getPath("/"));
+        operate(List.of(location));
+    }
+
+    /**
+     * Scan the given inputs.
+     * <p>
+     * Classes from every input, including jars nested inside them, pass
+     * through a single {@link ScanPipeline}. When scanning more than one
+     * input, results are prefixed with the input they were found in.
+     *
+     * @param inputs The directories or jars to scan.
+     * @throws IOException If an IO error occurs.
+     */
+    public void operate(List<Path> inputs) throws IOException {
+        if (shard != null && !plan.getWholeProgramScanners().isEmpty()) {
+            throw new IllegalStateException("Whole program scanners can't be used with sharding, each shard only sees part of the program.");
+        }
+        if (shard != null && outputs.size() != 1) {
+            throw new IllegalStateException("Sharding only supports a single config.");
+        }
+        if (reportFile != null && outputs.size() != 1) {
+            throw new IllegalStateException("Each config needs its own report, name them with the config they are for.");
+        }
+        for (String name : reportFiles.keySet()) {
+            if (outputs.stream().noneMatch(e -> e.name.equals(name))) {
+                throw new IllegalStateException("Report given for unknown config '" + name + "'.");
             }
         }
+        if (matchInherited) {
+            buildHierarchy(inputs);
+        }
+        runPipeline(walker -> {
+            for (Path input : inputs) {
+                walker.walk(resolve(input), getPrefix(inputs, input));
+            }
+        });
+    }
+
+    /**
+     * Watch the given directories, re-scanning class files as they are added,
+     * modified or deleted. The change in results is printed after each batch,
+     * and any reports are rewritten.
+     * <p>
+     * Expects {@link #operate(List)} to have already been called with the same inputs,
+     * with {@link #setRetainResults} enabled if writing reports. Jars are not watched.
+     * Only returns if interrupted.
+     *
+     * @param inputs The inputs.
+     * @throws IOException If an IO error occurs setting up the watch.
+     */
+    public void watch(List<Path> inputs) throws IOException {
+        if (!retainResults && outputs.stream().anyMatch(e -> e.reportFile != null)) {
+            throw new IllegalStateException("Results must be retained to watch whilst writing reports.");
+        }
+        Map<Path, String> roots = new LinkedHashMap<>();
+        for (Path input : inputs) {
+            Path dir = resolve(input).toAbsolutePath().normalize();
+            if (!Files.isDirectory(dir)) {
+                LOGGER.warn("Not watching {}, only directories can be watched.", input);
+                continue;
+            }
+            roots.put(dir, getPrefix(inputs, input));
+        }
+        if (roots.isEmpty()) return;
+
+        try (ClassWatcher watcher = new ClassWatcher(roots.keySet())) {
+            LOGGER.info("Watching {} directories for changes.", roots.size());
+            while (true) {
+                ClassWatcher.Changes changes = watcher.poll();
+                try {
+                    if (changes.overflow() || matchInherited || !plan.getWholeProgramScanners().isEmpty()) {
+                        if (changes.overflow()) {
+                            LOGGER.warn("Missed some file events, re-scanning everything.");
+                        } else {
+                            LOGGER.info("Re-scanning everything, inherited matching and whole program scanners need every class.");
+                        }
+                        clearResults();
+                        operate(inputs);
+                        printResults();
+                    } else {
+                        rescan(roots, changes);
+                    }
+                } catch (IOException ex) {
+                    LOGGER.error("Failed to re-scan changes.", ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rescan(Map<Path, String> roots, ClassWatcher.Changes changes) throws IOException {
+        // Snapshot the affected classes, so only the difference is printed.
+        Map<String, Path> affected = new LinkedHashMap<>();
+        for (Path file : changes.changed()) {
+            affected.put(getClassKey(roots, file), file);
+        }
+        for (Path file : changes.deleted()) {
+            affected.put(getClassKey(roots, file), file);
+        }
+        List<Map<String, Set<String>>> before = new ArrayList<>(outputs.size());
+        for (ConfigOutput output : outputs) {
+            Map<String, Set<String>> snapshot = new HashMap<>();
+            for (String key : affected.keySet()) {
+                snapshot.put(key, describeResults(output, key));
+                output.results.remove(key);
+            }
+            before.add(snapshot);
+        }
+
+        runPipeline(walker -> {
+            for (Path file : changes.changed()) {
+                if (Files.isRegularFile(file)) {
+                    walker.walk(file, roots.get(findRoot(roots, file)));
+                }
+            }
+        });
+
+        int added = 0;
+        int resolved = 0;
+        int total = 0;
+        for (int config = 0; config < outputs.size(); config++) {
+            ConfigOutput output = outputs.get(config);
+            String tag = outputs.size() > 1 ? "[" + output.name + "] " : "";
+            for (String key : affected.keySet()) {
+                Set<String> old = before.get(config).get(key);
+                Set<String> now = describeResults(output, key);
+                for (String line : now) {
+                    if (!old.contains(line)) {
+                        LOGGER.error("+ {}{} {}", tag, key, line);
+                        added++;
+                    }
+                }
+                for (String line : old) {
+                    if (!now.contains(line)) {
+                        LOGGER.info("- {}{} {}", tag, key, line);
+                        resolved++;
+                    }
+                }
+            }
+            total += output.results.getResultCount();
+        }
+        LOGGER.info("Re-scanned {} changed classes, {} deleted. {} new results, {} resolved, {} total.",
+                changes.changed().size(),
+                changes.deleted().size(),
+                added,
+                resolved,
+                total
+        );
+    }
+
+    private static Set<String> describeResults(ConfigOutput output, String className) {
+        Map<String, List<ScanResult>> methods = output.results.asMap().get(className);
+        if (methods == null) return Set.of();
+
+        Set<String> lines = new LinkedHashSet<>();
+        for (Map.Entry<String, List<ScanResult>> entry : methods.entrySet()) {
+            for (ScanResult result : entry.getValue()) {
+                lines.add(entry.getKey() + " " + result.problem() + ", " + result.ctx().describe());
+            }
+        }
+        return lines;
+    }
+
+    private void runPipeline(PipelineAction action) throws IOException {
+        List<Scanner> wholeProgramScanners = plan.getWholeProgramScanners();
+        if (cacheFile != null && !wholeProgramScanners.isEmpty()) {
+            // Cached classes would be missing from the whole program view.
+            LOGGER.info("Not using scan cache, whole program scanners need every class.");
+        } else if (cacheFile != null && outputs.size() != 1) {
+            LOGGER.info("Not using scan cache, it only holds the results of a single config.");
+        } else if (cacheFile != null) {
+            // Results depend on the hierarchy when matching inherited members, any change invalidates them all.
+            HashCode hash = hierarchy != null ? ScanCache.hashConfig(configHash + ":" + hierarchy.getFingerprint()) : configHash;
+            if (cache == null || !hash.equals(cacheHash)) {
+                cache = ScanCache.load(cacheFile, hash);
+                cacheHash = hash;
+            }
+        }
+        ScanMetrics metrics = metricsEnabled ? new ScanMetrics(plan) : null;
+        this.metrics = metrics;
+        for (Scanner scanner : wholeProgramScanners) {
+            scanner.begin();
+        }
+        foundResults = 0;
+        resultLimitExceeded = false;
+        try (PartialResults.Writer partial = shardOutput != null ? PartialResults.open(resolve(shardOutput), configHash, shard.index(), shard.count()) : null) {
+            if (!retainResults) {
+                openReports();
+            }
+            ScanPipeline<ClassResults> pipeline = new ScanPipeline<>(ioThreads, scanThreads, this::scanClass, e -> addResults(partial, e));
+            activePipeline = pipeline;
+            try (pipeline) {
+                action.run(new InputWalker(pipeline, shard));
+            } finally {
+                activePipeline = null;
+            }
+            if (partial != null) {
+                partial.finish(scannedClasses.get(), cachedClasses.get(), skippedClasses.get(), !pipeline.wasCancelled());
+            }
+            if (metrics != null) {
+                metrics.recordIo(pipeline.getBytesRead(), pipeline.getIoNanos());
+            }
+            if (pipeline.wasCancelled() && !wholeProgramScanners.isEmpty()) {
+                LOGGER.info("Skipping whole program scanners, the scan was stopped early.");
+                wholeProgramScanners = List.of();
+            }
+            for (Scanner scanner : wholeProgramScanners) {
+                long start = System.nanoTime();
+                Map<String, Map<String, List<ScanResult>>> results = scanner.finish();
+                if (metrics != null) {
+                    metrics.recordFinish(scanner, System.nanoTime() - start, results);
+                }
+                ConfigOutput output = outputs.get(plan.getConfigIndex(scanner));
+                for (Map.Entry<String, Map<String, List<ScanResult>>> entry : results.entrySet()) {
+                    if (resultLimitExceeded) break;
+
+                    addResults(output, null, -1, entry.getKey(), mergeResults(output, entry.getKey(), entry.getValue()));
+                    checkResultLimit();
+                }
+            }
+        } finally {
+            closeReports();
+        }
+        if (retainResults) {
+            writeReports();
+        }
+        if (cache != null) {
+            if (resultLimitExceeded || shard != null) {
+                // Classes we never got to, or which belong to other shards, may still have valid entries.
+                cache.retainPrevious();
+            }
+            cache.save();
+        }
+        if (metrics != null) {
+            metrics.finish();
+            if (metricsFile != null) {
+                metrics.write(resolve(metricsFile));
+            }
+        }
+    }
+
+    /**
+     * Read the header of every input and library class, and give the resulting
+     * hierarchy to the scanners of every config matching inherited members.
+     */
+    private void buildHierarchy(List<Path> inputs) throws IOException {
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        try (ScanPipeline<ClassHeader> pipeline = new ScanPipeline<>(ioThreads, scanThreads, (index, prefix, bytes) -> ClassHeader.read(bytes), e -> hierarchy.add(e.name(), e.superName(), e.interfaces()))) {
+            InputWalker walker = new InputWalker(pipeline);
+            for (Path library : libraries) {
+                walker.walk(resolve(library), "");
+            }
+            for (Path input : inputs) {
+                walker.walk(resolve(input), "");
+            }
+        }
+        LOGGER.info("Built class hierarchy of {} classes.", hierarchy.getClassCount());
+
+        this.hierarchy = hierarchy;
+        constantPoolFilter = plan.buildConstantPoolFilter(hierarchy);
+        for (ScanPlan.ScanGroup group : plan.getGroups()) {
+            // Only configs with match_inherited set see the hierarchy.
+            if (!inheritedConfigs.get(group.config())) continue;
+
+            for (Scanner scanner : group.scanners()) {
+                scanner.setHierarchy(hierarchy);
+            }
+        }
+    }
+
+    // Whole program results may land in a class which already has results.
+    private static Map<String, List<ScanResult>> mergeResults(ConfigOutput output, String className, Map<String, List<ScanResult>> results) {
+        Map<String, List<ScanResult>> existing = output.report == null ? output.results.asMap().get(className) : null;
+        if (existing == null) return results;
+
+        Map<String, List<ScanResult>> merged = new LinkedHashMap<>(existing);
+        for (Map.Entry<String, List<ScanResult>> entry : results.entrySet()) {
+            merged.merge(entry.getKey(), entry.getValue(), (a, b) -> {
+                List<ScanResult> list = new ArrayList<>(a);
+                list.addAll(b);
+                return list;
+            });
+        }
+        return merged;
+    }
+
+    private Path resolve(Path input) {
+        return workingDir != null ? workingDir.resolve(input) : input;
+    }
+
+    private String getPrefix(List<Path> inputs, Path input) {
+        if (inputs.size() <= 1) return "";
+
+        return input.toString().replace('\\', '/') + (Files.isDirectory(resolve(input)) ? "/" : "!/");
+    }
+
+    private static Path findRoot(Map<Path, String> roots, Path file) {
+        Path best = null;
+        for (Path root : roots.keySet()) {
+            if (file.startsWith(root) && (best == null || root.getNameCount() > best.getNameCount())) {
+                best = root;
+            }
+        }
+        if (best == null) throw new IllegalArgumentException("File " + file + " is not in any watched directory.");
+        return best;
+    }
+
+    // Assumes the usual layout of compiled classes, the path matches the class name.
+    private static String getClassKey(Map<Path, String> roots, Path file) {
+        Path root = findRoot(roots, file);
+        String relative = root.relativize(file).toString().replace('\\', '/');
+        return roots.get(root) + relative.substring(0, relative.length() - ".class".length());
+    }
+
+    /**
+     * Clear all results and counters, ready for another call to {@link #operate}.
+     */
+    public void clearResults() {
+        for (ConfigOutput output : outputs) {
+            output.results.clear();
+            output.reportedClasses = 0;
+            output.reportedResults = 0;
+        }
+        scannedClasses.set(0);
+        skippedClasses.set(0);
+        cachedClasses.set(0);
     }
 
     public void printResults() {
-        if (!scanResults.isEmpty()) {
-            LOGGER.error("Errors detected:");
-            for (Map.Entry<String, Map<String, List<ScanResult>>> classEntry : scanResults.entrySet()) {
-                LOGGER.error(classEntry.getKey());
-                for (Map.Entry<String, List<ScanResult>> methodEntry : classEntry.getValue().entrySet()) {
-                    LOGGER.error(" {}", methodEntry.getKey());
-                    for (ScanResult scanResult : methodEntry.getValue()) {
-                        LOGGER.error("  {}, {}", scanResult.problem(), scanResult.ctx().describe());
+        printResults((level, msg) -> LOGGER.log(level, msg));
+    }
+
+    /**
+     * Print the results.
+     *
+     * @param out Receives each line to print, and the level to print it at.
+     */
+    public void printResults(BiConsumer<Level, String> out) {
+        out.accept(Level.INFO, "Scanned " + scannedClasses.get() + " classes, " + cachedClasses.get() + " from cache, " + skippedClasses.get() + " skipped by constant pool prefilter.");
+        if (resultLimitExceeded) {
+            out.accept(Level.ERROR, maxResults == 0 ? "Stopped at the first result." : "Stopped after finding more than " + maxResults + " results.");
+        }
+        for (ConfigOutput output : outputs) {
+            String suffix = outputs.size() > 1 ? " for config '" + output.name + "'" : "";
+            if (shardOutput != null) {
+                out.accept(Level.INFO, "Wrote " + output.reportedResults + " results in " + output.reportedClasses + " classes to " + shardOutput + ", shard " + shard + ".");
+            } else if (output.reportFile != null) {
+                out.accept(Level.INFO, "Wrote " + output.reportedResults + " results in " + output.reportedClasses + " classes" + suffix + " to " + output.reportFile + ".");
+            }
+            ResultStore results = output.results;
+            // Retained results are already in the report.
+            if (output.reportFile == null && !results.isEmpty()) {
+                out.accept(Level.ERROR, "Errors detected" + suffix + ":");
+                for (int cls = 0; cls < results.getClassCount(); cls++) {
+                    out.accept(Level.ERROR, results.getClassName(cls));
+                    int method = -1;
+                    for (int row = results.getStart(cls); row < results.getEnd(cls); row++) {
+                        if (results.getMethodId(row) != method) {
+                            method = results.getMethodId(row);
+                            out.accept(Level.ERROR, " " + results.getMethod(row));
+                        }
+                        out.accept(Level.ERROR, "  " + results.getMessage(row) + ", " + results.getLocation(row).describe());
                     }
                 }
             }
         }
     }
 
+    /**
+     * @return A read only view of the results of the first config, keyed by class, then method.
+     */
     public Map<String, Map<String, List<ScanResult>>> getScanResults() {
-        return scanResults;
+        return outputs.get(0).results.asMap();
     }
 
-    private void scanRootDir(Path root) throws IOException {
-        try (Stream<Path> stream = Files.walk(root)) {
-            stream.parallel()
-                    .filter(Files::isRegularFile)
-                    .filter(e -> e.getFileName().toString().endsWith(".class"))
-                    .forEach(SneakyUtils.sneak(this::scanClass));
+    /**
+     * @param config The name of the config.
+     * @return A read only view of the results of the given config, keyed by class, then method.
+     */
+    public Map<String, Map<String, List<ScanResult>>> getScanResults(String config) {
+        for (ConfigOutput output : outputs) {
+            if (output.name.equals(config)) return output.results.asMap();
         }
+        throw new IllegalArgumentException("Unknown config: " + config);
     }
 
-    private void scanClass(Path file) throws IOException {
-        Map<String, List<ScanResult>> methodResults = new HashMap<>();
+    /**
+     * @return The underlying store of results of the first config.
+     */
+    public ResultStore getResultStore() {
+        return outputs.get(0).results;
+    }
 
-        ClassNode cNode = toNode(file);
-        Set<String> excludedGroupsByClass = getExcludedGroups(cNode.visibleAnnotations);
-        for (MethodNode mNode : cNode.methods) {
-            if (excludedGroupsByClass.contains("*")) continue;
-            Set<String> excludedGroupsByMethod = getExcludedGroups(mNode.visibleAnnotations);
-            List<ScanResult> results = new LinkedList<>();
-            for (AbstractInsnNode insn : mNode.instructions) {
-                if (excludedGroupsByMethod.contains("*")) continue;
-                for (Scanner scanner : getApplicableScanners(excludedGroupsByClass, excludedGroupsByMethod)) {
-                    ScanResult result = scanner.scan(insn, mNode, cNode);
-                    if (result != null) {
-                        results.add(result);
-                    }
+    private ClassResults scanClass(long index, String prefix, byte[] bytes) {
+        scannedClasses.incrementAndGet();
+        ScanMetrics metrics = this.metrics;
+
+        ScanCache cache = this.cache;
+        HashCode hash = null;
+        if (cache != null) {
+            hash = ScanCache.hash(bytes);
+            ScanCache.Entry entry = cache.get(hash);
+            if (entry != null) {
+                cachedClasses.incrementAndGet();
+                if (metrics != null) {
+                    metrics.recordCached();
                 }
+                return new ClassResults(index, prefix + entry.className(), List.of(entry.results()));
             }
-            if (!results.isEmpty()) {
-                methodResults.put(mNode.name + mNode.desc, results);
+        }
+
+        ClassReader reader = new ClassReader(bytes);
+        List<Map<String, List<ScanResult>>> methodResults;
+        if (constantPoolFilter.mayMatch(reader)) {
+            ScanMetrics.Recorder recorder = metrics != null ? metrics.startClass() : null;
+            methodResults = engine.scanClassByConfig(reader, recorder);
+            if (recorder != null) {
+                recorder.end(reader.getClassName(), bytes.length);
             }
+        } else {
+            skippedClasses.incrementAndGet();
+            if (metrics != null) {
+                metrics.recordSkipped();
+            }
+            methodResults = noResults;
         }
-        if (!methodResults.isEmpty()) {
-            scanResults.put(cNode.name, methodResults);
+        if (cache != null) {
+            // Only used with a single config.
+            cache.put(hash, reader.getClassName(), methodResults.get(0));
         }
+        return new ClassResults(index, prefix + reader.getClassName(), methodResults);
     }
 
-    private StreamableIterable<Scanner> getApplicableScanners(Set<String> classExcludes, Set<String> methodExcludes) {
-        return StreamableIterable.of(scanners.entrySet())
-                .filterNot(e -> classExcludes.contains(e.getKey()) || methodExcludes.contains(e.getKey()))
-                .flatMap(Map.Entry::getValue);
+    private void addResults(PartialResults.@Nullable Writer partial, ClassResults results) throws IOException {
+        // Results which arrive after the limit are dropped, whole classes at a time.
+        if (resultLimitExceeded) return;
+
+        for (int config = 0; config < outputs.size(); config++) {
+            addResults(outputs.get(config), partial, results.index(), results.name(), results.configs().get(config));
+        }
+        checkResultLimit();
     }
 
-    private static ClassNode toNode(Path file) throws IOException {
-        try (InputStream is = Files.newInputStream(file)) {
-            ClassReader reader = new ClassReader(is);
-            ClassNode cNode = new ClassNode();
-            reader.accept(cNode, ClassReader.EXPAND_FRAMES);
-            return cNode;
+    private void addResults(ConfigOutput output, PartialResults.@Nullable Writer partial, long index, String className, Map<String, List<ScanResult>> methods) throws IOException {
+        if (partial == null && output.report == null) {
+            // Also the case when retaining results, reports are written after the scan.
+            output.results.add(className, methods);
+        } else if (!methods.isEmpty()) {
+            if (partial != null) {
+                partial.writeClass(index, className, methods);
+            } else {
+                output.report.writeClass(className, methods);
+            }
+            output.reportedClasses++;
+            for (List<ScanResult> methodResults : methods.values()) {
+                output.reportedResults += methodResults.size();
+            }
+        }
+
+        if (maxResults == -1) return;
+        for (List<ScanResult> methodResults : methods.values()) {
+            foundResults += methodResults.size();
         }
     }
 
-    private Set<String> getExcludedGroups(List<AnnotationNode> annotations) {
-        if (annotations == null || annotations.isEmpty()) return ImmutableSet.of();
+    private void checkResultLimit() {
+        if (maxResults == -1 || foundResults <= maxResults) return;
 
-        Set<String> ignored = new HashSet<>();
-        for (AnnotationNode annotation : annotations) {
-            if (ignoreAnnotations.contains(annotation.desc)) {
-                if (annotation.values == null) {
-                    ignored.add("*");
-                } else if (annotation.values.size() != 2) {
-                    LOGGER.warn("Failed to parse ignore annotation. Expected 2 values. Got :" + annotation.values);
-                } else {
-                    addValues(ignored, annotation.values.get(1));
+        resultLimitExceeded = true;
+        ScanPipeline<ClassResults> pipeline = activePipeline;
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
+    }
+
+    // Rewrite every report from the retained results.
+    private void writeReports() throws IOException {
+        try {
+            openReports();
+            for (ConfigOutput output : outputs) {
+                if (output.report == null) continue;
+
+                output.reportedClasses = 0;
+                output.reportedResults = 0;
+                for (Map.Entry<String, Map<String, List<ScanResult>>> entry : output.results.asMap().entrySet()) {
+                    output.report.writeClass(entry.getKey(), entry.getValue());
+                    output.reportedClasses++;
+                    for (List<ScanResult> methodResults : entry.getValue().values()) {
+                        output.reportedResults += methodResults.size();
+                    }
                 }
-                ignored.addAll(unsafeCast(annotation.values.get(1)));
             }
+        } finally {
+            closeReports();
         }
-        return ignored;
     }
 
-    private void addValues(Set<String> ignored, Object obj) {
-        if (obj instanceof String s) {
-            ignored.add(s);
-        } else if (obj instanceof List<?> list) {
-            for (Object o : list) {
-                addValues(ignored, o);
+    private void openReports() throws IOException {
+        for (ConfigOutput output : outputs) {
+            if (output.reportFile != null) {
+                output.report = reportFormat.open(resolve(output.reportFile));
             }
-        } else {
-            LOGGER.info("Unknown value type in ignore annotation: {}:{}", obj.getClass(), obj);
+        }
+    }
+
+    private void closeReports() throws IOException {
+        IOException error = null;
+        for (ConfigOutput output : outputs) {
+            if (output.report == null) continue;
+
+            try {
+                output.report.close();
+            } catch (IOException ex) {
+                if (error == null) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+            output.report = null;
+        }
+        if (error != null) throw error;
+    }
+
+    private interface PipelineAction {
+
+        void run(InputWalker walker) throws IOException;
+    }
+
+    /**
+     * @param index   The position of the class in the walk of the inputs, or {@code -1} for whole program results.
+     * @param configs The results of each config, in the order of the plan's configs.
+     */
+    private record ClassResults(long index, String name, List<Map<String, List<ScanResult>>> configs) {
+    }
+
+    /**
+     * The results of a single config, kept in memory, streamed to its report, or both
+     * when retaining results.
+     */
+    private static final class ConfigOutput {
+
+        private final String name;
+        private final ResultStore results = new ResultStore();
+        @Nullable
+        private Path reportFile;
+        // Only open whilst scanning.
+        @Nullable
+        private ReportWriter report;
+        private int reportedClasses;
+        private int reportedResults;
+
+        private ConfigOutput(String name) {
+            this.name = name;
+        }
+    }
+
+    private record ClassHeader(String name, @Nullable String superName, String[] interfaces) {
+
+        // Only the header is parsed, the constant pool is indexed but nothing else is read.
+        public static ClassHeader read(byte[] bytes) {
+            ClassReader reader = new ClassReader(bytes);
+            return new ClassHeader(reader.getClassName(), reader.getSuperName(), reader.getInterfaces());
         }
     }
 }
@@ -0,0 +1,243 @@
+package net.covers1624.bcs.cache;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import net.covers1624.bcs.util.SymbolTable;
+import net.covers1624.quack.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent cache of per-class scan results, keyed by a hash of the class bytes.
+ * <p>
+ * The whole cache is tied to a hash of the config it was produced with. Loading
+ * a cache written for a different config, or an older format, yields an empty cache.
+ * <p>
+ * Only entries used during this session are written back by {@link #save()}, so
+ * classes which no longer exist fall out of the cache.
+ */
+public final class ScanCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int MAGIC = 0x42435343; // BCSC
+    private static final int VERSION = 3;
+
+    private final Path file;
+    private final HashCode configHash;
+    private final Map<HashCode, Entry> previous;
+    private final Map<HashCode, Entry> current = new ConcurrentHashMap<>();
+
+    private ScanCache(Path file, HashCode configHash, Map<HashCode, Entry> previous) {
+        this.file = file;
+        this.configHash = configHash;
+        this.previous = previous;
+    }
+
+    /**
+     * Hash the given class bytes for use as a cache key.
+     *
+     * @param bytes The class bytes.
+     * @return The hash.
+     */
+    public static HashCode hash(byte[] bytes) {
+        return HASH_FUNCTION.hashBytes(bytes);
+    }
+
+    /**
+     * Hash the given config string.
+     *
+     * @param config The config.
+     * @return The hash.
+     */
+    public static HashCode hashConfig(String config) {
+        return HASH_FUNCTION.newHasher()
+                .putInt(VERSION)
+                .putUnencodedChars(config)
+                .hash();
+    }
+
+    /**
+     * Load a cache from disk.
+     *
+     * @param file       The cache file. Does not need to exist.
+     * @param configHash The hash of the current config.
+     * @return The cache.
+     */
+    public static ScanCache load(Path file, HashCode configHash) {
+        if (!Files.exists(file)) return new ScanCache(file, configHash, Map.of());
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Ignoring scan cache {}, unknown format.", file);
+                return new ScanCache(file, configHash, Map.of());
+            }
+            if (!readHash(in).equals(configHash)) {
+                LOGGER.info("Ignoring scan cache {}, config changed.", file);
+                return new ScanCache(file, configHash, Map.of());
+            }
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            int count = in.readInt();
+            Map<HashCode, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                HashCode hash = readHash(in);
+                String className = strings[in.readInt()];
+                int methods = in.readInt();
+                Map<String, List<ScanResult>> results = methods == 0 ? Map.of() : new HashMap<>();
+                for (int j = 0; j < methods; j++) {
+                    String method = strings[in.readInt()];
+                    ScanResult[] methodResults = new ScanResult[in.readInt()];
+                    for (int k = 0; k < methodResults.length; k++) {
+                        Location loc = new Location(in.readInt(), in.readInt());
+                        int opcode = in.readShort();
+                        String rule = strings[in.readInt()];
+                        methodResults[k] = new ScanResult(loc, opcode, rule, readString(in, strings), readString(in, strings), readString(in, strings));
+                    }
+                    results.put(method, List.of(methodResults));
+                }
+                entries.put(hash, new Entry(className, results));
+            }
+            return new ScanCache(file, configHash, entries);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Failed to read scan cache {}, ignoring.", file, ex);
+            return new ScanCache(file, configHash, Map.of());
+        }
+    }
+
+    /**
+     * Get a cached entry.
+     *
+     * @param classHash The hash of the class bytes.
+     * @return The entry, or {@code null} if this class has not been seen before.
+     */
+    @Nullable
+    public Entry get(HashCode classHash) {
+        Entry entry = current.get(classHash);
+        if (entry != null) return entry;
+
+        entry = previous.get(classHash);
+        if (entry != null) {
+            current.put(classHash, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Store the results of scanning a class.
+     *
+     * @param classHash The hash of the class bytes.
+     * @param className The class name.
+     * @param results   The results, keyed by method.
+     */
+    public void put(HashCode classHash, String className, Map<String, List<ScanResult>> results) {
+        current.put(classHash, new Entry(className, results));
+    }
+
+    /**
+     * Keep every entry loaded from disk, even if unused this session.
+     * <p>
+     * For sessions which stopped before seeing every class, where unused entries
+     * may still be current.
+     */
+    public void retainPrevious() {
+        previous.forEach(current::putIfAbsent);
+    }
+
+    /**
+     * Write all entries used this session back to disk.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public void save() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        for (Entry entry : current.values()) {
+            symbols.intern(entry.className());
+            for (Map.Entry<String, List<ScanResult>> method : entry.results().entrySet()) {
+                symbols.intern(method.getKey());
+                for (ScanResult result : method.getValue()) {
+                    symbols.intern(result.rule());
+                    symbols.intern(result.owner());
+                    symbols.intern(result.name());
+                    symbols.intern(result.desc());
+                }
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(IOUtils.makeParents(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(configHash.asBytes());
+
+            out.writeInt(symbols.size());
+            for (String str : symbols.getSymbols()) {
+                out.writeUTF(str);
+            }
+
+            out.writeInt(current.size());
+            for (Map.Entry<HashCode, Entry> e : current.entrySet()) {
+                Entry entry = e.getValue();
+                out.write(e.getKey().asBytes());
+                out.writeInt(symbols.lookup(entry.className()));
+                out.writeInt(entry.results().size());
+                for (Map.Entry<String, List<ScanResult>> method : entry.results().entrySet()) {
+                    out.writeInt(symbols.lookup(method.getKey()));
+                    out.writeInt(method.getValue().size());
+                    for (ScanResult result : method.getValue()) {
+                        out.writeInt(result.ctx().lineNumber());
+                        out.writeInt(result.ctx().insnIndex());
+                        out.writeShort(result.opcode());
+                        out.writeInt(symbols.lookup(result.rule()));
+                        out.writeInt(symbols.lookup(result.owner()));
+                        out.writeInt(symbols.lookup(result.name()));
+                        out.writeInt(symbols.lookup(result.desc()));
+                    }
+                }
+            }
+        }
+        try {
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                // Some filesystems can't, a torn cache file is ignored when loading anyway.
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInput in, String[] strings) throws IOException {
+        int id = in.readInt();
+        return id == SymbolTable.NULL ? null : strings[id];
+    }
+
+    private static HashCode readHash(DataInput in) throws IOException {
+        byte[] bytes = new byte[HASH_FUNCTION.bits() / 8];
+        in.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    public record Entry(String className, Map<String, List<ScanResult>> results) {
+    }
+}
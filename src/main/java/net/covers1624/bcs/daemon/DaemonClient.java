@@ -0,0 +1,42 @@
+package net.covers1624.bcs.daemon;
+
+import org.apache.logging.log4j.Level;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends scan requests to a {@link ScanDaemon}.
+ */
+public class DaemonClient {
+
+    /**
+     * Send a request and wait for the results.
+     *
+     * @param socket  The socket the daemon is listening on.
+     * @param request The request.
+     * @param out     Receives each line printed by the daemon, the same lines the
+     *                one-shot CLI would print.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void scan(Path socket, ScanRequest request, BiConsumer<Level, String> out) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            dos.writeInt(ScanDaemon.PROTOCOL_VERSION);
+            request.write(dos);
+            dos.flush();
+
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (dis.readBoolean()) {
+                Level level = Level.toLevel(dis.readUTF(), Level.INFO);
+                out.accept(level, dis.readUTF());
+            }
+        }
+    }
+}
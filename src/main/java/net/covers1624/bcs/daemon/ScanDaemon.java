@@ -0,0 +1,156 @@
+package net.covers1624.bcs.daemon;
+
+import net.covers1624.bcs.BadCodeScanner;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.function.Supplier;
+
+/**
+ * A long-lived process which accepts scan requests over a unix domain socket.
+ * <p>
+ * The config is compiled once and kept, along with the scan cache and a warm JIT,
+ * between requests. The config is reloaded when its modification time changes.
+ * Requests are handled one at a time, each scan already uses every core.
+ * <p>
+ * Protocol, all values written with {@link DataOutput}:
+ * <ol>
+ *     <li>Client: {@link #PROTOCOL_VERSION}, then a {@link ScanRequest}.</li>
+ *     <li>Daemon: Any number of lines, each {@code true}, a log level name and a message.</li>
+ *     <li>Daemon: {@code false}, marking the end of the response.</li>
+ * </ol>
+ */
+public class ScanDaemon {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static final int PROTOCOL_VERSION = 1;
+
+    private final Path socket;
+    private final Path config;
+    private final Supplier<BadCodeScanner> factory;
+
+    @Nullable
+    private BadCodeScanner scanner;
+    @Nullable
+    private FileTime configTime;
+
+    /**
+     * @param socket  The socket file to listen on. Replaced if it already exists.
+     * @param config  The config file.
+     * @param factory Creates a scanner with every option set, except for the config.
+     */
+    public ScanDaemon(Path socket, Path config, Supplier<BadCodeScanner> factory) {
+        this.socket = socket;
+        this.config = config;
+        this.factory = factory;
+    }
+
+    /**
+     * Listen for requests, never returns normally.
+     *
+     * @throws IOException If the socket can not be opened.
+     */
+    public void run() throws IOException {
+        // Compile the config up front, so the first request is fast and errors surface now.
+        getScanner();
+
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            LOGGER.info("Listening on {}", socket);
+            while (true) {
+                try (SocketChannel channel = server.accept()) {
+                    handle(channel);
+                } catch (IOException ex) {
+                    LOGGER.warn("Failed to handle request.", ex);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private void handle(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+        int version = in.readInt();
+        if (version != PROTOCOL_VERSION) {
+            writeLine(out, Level.ERROR, "Unsupported protocol version " + version + ", expected " + PROTOCOL_VERSION + ".");
+        } else {
+            scan(ScanRequest.read(in), out);
+        }
+        out.writeBoolean(false);
+        out.flush();
+    }
+
+    private void scan(ScanRequest request, DataOutputStream out) throws IOException {
+        LOGGER.info("Scanning {}", request.inputs());
+        BadCodeScanner scanner;
+        try {
+            scanner = getScanner();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.error("Failed to load config {}.", config, ex);
+            writeLine(out, Level.ERROR, "Failed to load config " + config + ": " + ex);
+            return;
+        }
+
+        try {
+            scanner.clearResults();
+            scanner.setWorkingDir(request.workingDir());
+            scanner.setReport(request.report(), request.reportFormat());
+            scanner.operate(request.inputs());
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.error("Scan failed.", ex);
+            writeLine(out, Level.ERROR, "Scan failed: " + ex);
+            return;
+        }
+
+        try {
+            scanner.printResults((level, msg) -> {
+                try {
+                    writeLine(out, level, msg);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            // Don't hold onto results between requests.
+            scanner.clearResults();
+        }
+    }
+
+    private BadCodeScanner getScanner() throws IOException {
+        FileTime time = Files.getLastModifiedTime(config);
+        if (scanner == null || !time.equals(configTime)) {
+            if (scanner != null) {
+                LOGGER.info("Config {} changed, reloading.", config);
+            }
+            BadCodeScanner scanner = factory.get();
+            scanner.setup(config);
+            this.scanner = scanner;
+            configTime = time;
+        }
+        return scanner;
+    }
+
+    private static void writeLine(DataOutputStream out, Level level, String message) throws IOException {
+        out.writeBoolean(true);
+        out.writeUTF(level.name());
+        out.writeUTF(message);
+    }
+}
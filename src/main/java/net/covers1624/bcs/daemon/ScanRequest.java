@@ -0,0 +1,47 @@
+package net.covers1624.bcs.daemon;
+
+import net.covers1624.bcs.results.ReportFormat;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request sent from a {@link DaemonClient} to a {@link ScanDaemon}.
+ *
+ * @param workingDir   The working directory of the client, relative inputs are resolved against this.
+ * @param inputs       The inputs, as given to the client.
+ * @param report       The absolute path of the report to write, if any.
+ * @param reportFormat The format of the report.
+ */
+public record ScanRequest(Path workingDir, List<Path> inputs, @Nullable Path report, ReportFormat reportFormat) {
+
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(workingDir.toString());
+        out.writeInt(inputs.size());
+        for (Path input : inputs) {
+            out.writeUTF(input.toString());
+        }
+        out.writeBoolean(report != null);
+        if (report != null) {
+            out.writeUTF(report.toString());
+        }
+        out.writeUTF(reportFormat.name());
+    }
+
+    public static ScanRequest read(DataInput in) throws IOException {
+        Path workingDir = Path.of(in.readUTF());
+        int count = in.readInt();
+        List<Path> inputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            inputs.add(Path.of(in.readUTF()));
+        }
+        Path report = in.readBoolean() ? Path.of(in.readUTF()) : null;
+        ReportFormat reportFormat = ReportFormat.valueOf(in.readUTF());
+        return new ScanRequest(workingDir, List.copyOf(inputs), report, reportFormat);
+    }
+}
@@ -0,0 +1,129 @@
+package net.covers1624.bcs.engine;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * A cheap pre-pass over a class's constant pool, used to skip classes
+ * which cannot possibly produce a result.
+ * <p>
+ * The filter is compiled from the strings returned by {@link net.covers1624.bcs.scanners.Scanner#getConstantPoolPrefixes()}
+ * into a byte trie over their modified UTF-8 encoding. Every {@code CONSTANT_Utf8} entry is
+ * tested from its start, and from after each {@code L} (to catch types inside descriptors and
+ * signatures), without decoding any strings.
+ */
+public final class ConstantPoolFilter {
+
+    /**
+     * A filter which lets every class through.
+     */
+    public static final ConstantPoolFilter ALL = new ConstantPoolFilter(null, null);
+
+    private static final int CONSTANT_UTF8_TAG = 1;
+
+    @Nullable
+    private final Int2IntMap transitions;
+    @Nullable
+    private final BitSet terminals;
+
+    private ConstantPoolFilter(@Nullable Int2IntMap transitions, @Nullable BitSet terminals) {
+        this.transitions = transitions;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Build a filter for the given prefixes.
+     *
+     * @param prefixes The prefixes, or {@code null} if any class may match.
+     * @return The filter.
+     */
+    public static ConstantPoolFilter build(@Nullable Collection<String> prefixes) {
+        if (prefixes == null) return ALL;
+
+        Int2IntMap transitions = new Int2IntOpenHashMap();
+        transitions.defaultReturnValue(-1);
+        BitSet terminals = new BitSet();
+        int nodes = 1;
+        for (String prefix : prefixes) {
+            if (prefix.isEmpty()) return ALL;
+
+            int node = 0;
+            for (byte b : encode(prefix)) {
+                int key = node << 8 | (b & 0xFF);
+                int next = transitions.get(key);
+                if (next == -1) {
+                    transitions.put(key, next = nodes++);
+                }
+                node = next;
+            }
+            terminals.set(node);
+        }
+        return new ConstantPoolFilter(transitions, terminals);
+    }
+
+    /**
+     * @return If this filter lets every class through.
+     */
+    public boolean isAll() {
+        return transitions == null;
+    }
+
+    /**
+     * Test if the given class may produce a result.
+     *
+     * @param reader The class.
+     * @return {@code false} if the class definitely can not match.
+     */
+    public boolean mayMatch(ClassReader reader) {
+        if (transitions == null) return true;
+
+        int count = reader.getItemCount();
+        for (int i = 1; i < count; i++) {
+            int offset = reader.getItem(i);
+            // The second slot of a Long or Double entry.
+            if (offset == 0) continue;
+            if (reader.readByte(offset - 1) != CONSTANT_UTF8_TAG) continue;
+
+            int start = offset + 2;
+            int end = start + reader.readUnsignedShort(offset);
+            if (matchesAt(reader, start, end)) return true;
+            for (int pos = start; pos < end - 1; pos++) {
+                if (reader.readByte(pos) == 'L' && matchesAt(reader, pos + 1, end)) return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAt(ClassReader reader, int pos, int end) {
+        int node = 0;
+        for (int i = pos; i < end; i++) {
+            node = transitions.get(node << 8 | reader.readByte(i));
+            if (node == -1) return false;
+            if (terminals.get(node)) return true;
+        }
+        return false;
+    }
+
+    private static byte[] encode(String str) {
+        // DataOutputStream writes the same modified UTF-8 used by class files.
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(str.length() + 2);
+            new DataOutputStream(bos).writeUTF(str);
+            byte[] bytes = bos.toByteArray();
+            byte[] ret = new byte[bytes.length - 2];
+            System.arraycopy(bytes, 2, ret, 0, ret.length);
+            return ret;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
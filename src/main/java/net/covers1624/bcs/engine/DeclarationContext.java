@@ -0,0 +1,180 @@
+package net.covers1624.bcs.engine;
+
+import net.covers1624.bcs.metrics.ScanMetrics;
+import net.covers1624.bcs.scanners.Declaration;
+import net.covers1624.bcs.scanners.ScanContext;
+import net.covers1624.bcs.scanners.Scanner;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Passes the declarations of a single class or member to interested scanners.
+ * <p>
+ * Shared by both engines, so declarations are reported identically. Results are
+ * kept apart per config of the {@link ScanPlan}.
+ */
+final class DeclarationContext implements ScanContext {
+
+    private static final Location LOCATION = new Location(-1, -1);
+
+    private final String className;
+    private final int classAccess;
+    private final String name;
+    private final String desc;
+    private final int access;
+    private final ScanPlan plan;
+    private final Scanner[] scanners;
+    @Nullable
+    private final ScanMetrics.Recorder metrics;
+    @Nullable
+    private List<ScanResult>[] results;
+
+    DeclarationContext(String className, int classAccess, String name, String desc, int access, ScanPlan plan, DispatchTable table, @Nullable ScanMetrics.Recorder metrics) {
+        this.className = className;
+        this.classAccess = classAccess;
+        this.name = name;
+        this.desc = desc;
+        this.access = access;
+        this.plan = plan;
+        scanners = table.getDeclarationScanners();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Context for the declaration of the class itself.
+     */
+    static DeclarationContext forClass(String className, int classAccess, ScanPlan plan, DispatchTable table, @Nullable ScanMetrics.Recorder metrics) {
+        return new DeclarationContext(className, classAccess, ScanEngine.CLASS_KEY, "", classAccess, plan, table, metrics);
+    }
+
+    /**
+     * Create the results of a class, a map per config of the plan.
+     */
+    static List<Map<String, List<ScanResult>>> newResults(ScanPlan plan) {
+        int configs = plan.getConfigs().size();
+        List<Map<String, List<ScanResult>>> results = new ArrayList<>(configs);
+        for (int i = 0; i < configs; i++) {
+            results.add(new HashMap<>());
+        }
+        return results;
+    }
+
+    void declare(Declaration.Kind kind, @Nullable String value) {
+        if (value == null || scanners.length == 0) return;
+
+        Declaration decl = new Declaration(kind, value);
+        for (Scanner scanner : scanners) {
+            ScanResult result = metrics != null ? metrics.scanDeclaration(scanner, decl, this) : scanner.scanDeclaration(decl, this);
+            if (result != null) {
+                addResult(scanner, result);
+            }
+        }
+    }
+
+    /**
+     * Pass an instruction of this member to the given scanners.
+     */
+    void scan(Scanner[] scanners, AbstractInsnNode insn, ScanContext ctx) {
+        for (Scanner scanner : scanners) {
+            ScanResult result = metrics != null ? metrics.scan(scanner, insn, ctx) : scanner.scan(insn, ctx);
+            if (result != null) {
+                addResult(scanner, result);
+            }
+        }
+    }
+
+    // Results are kept in the order they were found.
+    @SuppressWarnings("unchecked")
+    private void addResult(Scanner scanner, ScanResult result) {
+        if (results == null) {
+            results = (List<ScanResult>[]) new List<?>[plan.getConfigs().size()];
+        }
+        int config = plan.getConfigIndex(scanner);
+        if (results[config] == null) {
+            results[config] = new ArrayList<>();
+        }
+        results[config].add(result);
+    }
+
+    void declareAll(Declaration.Kind kind, @Nullable Iterable<String> values) {
+        if (values == null) return;
+
+        for (String value : values) {
+            declare(kind, value);
+        }
+    }
+
+    /**
+     * Store the results for the class itself or a field, keyed by {@link ScanEngine#CLASS_KEY}
+     * or {@code name:desc} respectively.
+     */
+    void putResults(List<Map<String, List<ScanResult>>> methodResults) {
+        putResults(methodResults, name.equals(ScanEngine.CLASS_KEY) ? ScanEngine.CLASS_KEY : name + ":" + desc);
+    }
+
+    /**
+     * Store the results for a method, keyed by {@code name + desc}.
+     */
+    void putMethodResults(List<Map<String, List<ScanResult>>> methodResults) {
+        putResults(methodResults, name + desc);
+    }
+
+    private void putResults(List<Map<String, List<ScanResult>>> methodResults, String key) {
+        if (results == null) return;
+
+        for (int config = 0; config < results.length; config++) {
+            if (results[config] != null) {
+                methodResults.get(config).put(key, results[config]);
+            }
+        }
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public int getClassAccess() {
+        return classAccess;
+    }
+
+    @Override
+    public String getMethodName() {
+        return name;
+    }
+
+    @Override
+    public String getMethodDesc() {
+        return desc;
+    }
+
+    @Override
+    public int getMethodAccess() {
+        return access;
+    }
+
+    @Override
+    public Location getLocation() {
+        return LOCATION;
+    }
+
+    @Override
+    public MethodNode getMethodNode() {
+        throw new UnsupportedOperationException("Declarations have no method body.");
+    }
+
+    @Override
+    public <T> T getMethodData(Object key, Supplier<T> factory) {
+        throw new UnsupportedOperationException("Declarations have no method body.");
+    }
+}
@@ -0,0 +1,98 @@
+package net.covers1624.bcs.engine;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import net.covers1624.bcs.scanners.Scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An opcode indexed table of {@link Scanner}s.
+ * <p>
+ * Each slot holds the scanners which declared interest in that opcode
+ * via {@link Scanner#getOpcodes()}, in registration order.
+ */
+public final class DispatchTable {
+
+    private static final Scanner[] NONE = new Scanner[0];
+
+    public static final int SIZE = 256;
+    public static final DispatchTable EMPTY = new DispatchTable(new Scanner[SIZE][], NONE);
+
+    private final Scanner[][] table;
+    private final Scanner[] declarationScanners;
+    private final boolean empty;
+
+    private DispatchTable(Scanner[][] table, Scanner[] declarationScanners) {
+        boolean empty = declarationScanners.length == 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (table[i] == null) {
+                table[i] = NONE;
+            }
+            empty &= table[i].length == 0;
+        }
+        this.table = table;
+        this.declarationScanners = declarationScanners;
+        this.empty = empty;
+    }
+
+    public static DispatchTable build(Iterable<? extends Scanner> scanners) {
+        List<List<Scanner>> slots = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            slots.add(null);
+        }
+        List<Scanner> declarationScanners = new ArrayList<>();
+        for (Scanner scanner : scanners) {
+            if (scanner.scansDeclarations()) {
+                declarationScanners.add(scanner);
+            }
+            IntIterator iter = scanner.getOpcodes().iterator();
+            while (iter.hasNext()) {
+                int opcode = iter.nextInt();
+                if (opcode < 0 || opcode >= SIZE) continue;
+
+                List<Scanner> slot = slots.get(opcode);
+                if (slot == null) {
+                    slots.set(opcode, slot = new ArrayList<>());
+                }
+                slot.add(scanner);
+            }
+        }
+
+        Scanner[][] table = new Scanner[SIZE][];
+        for (int i = 0; i < SIZE; i++) {
+            List<Scanner> slot = slots.get(i);
+            if (slot != null) {
+                table[i] = slot.toArray(NONE);
+            }
+        }
+        return new DispatchTable(table, declarationScanners.toArray(NONE));
+    }
+
+    /**
+     * Get the scanners interested in the given opcode.
+     * <p>
+     * Pseudo instructions (labels, line numbers, frames) have no opcode, callers
+     * are expected to skip those before calling this.
+     *
+     * @param opcode The opcode, in the range [0, 256).
+     * @return The scanners. Never {@code null}, may be empty.
+     */
+    public Scanner[] get(int opcode) {
+        return table[opcode];
+    }
+
+    /**
+     * @return The scanners interested in declarations, see {@link Scanner#scansDeclarations()}.
+     */
+    public Scanner[] getDeclarationScanners() {
+        return declarationScanners;
+    }
+
+    /**
+     * @return If no scanner is interested in any opcode, or in declarations.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+}
@@ -0,0 +1,68 @@
+package net.covers1624.bcs.engine;
+
+import net.covers1624.bcs.metrics.ScanMetrics;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives the {@link ScanPlan}'s scanners over a single class.
+ * <p>
+ * Implementations must be safe to call from multiple threads at once.
+ */
+public interface ScanEngine {
+
+    /**
+     * The key results for the class declaration itself are stored under.
+     * Results for a field are keyed by {@code name:desc}, and for a method by
+     * its name followed by its descriptor.
+     */
+    String CLASS_KEY = "<class>";
+
+    /**
+     * Scan the given class.
+     *
+     * @param reader The class to scan.
+     * @return The results, keyed by member, see {@link #CLASS_KEY}. Empty if nothing was found.
+     */
+    default Map<String, List<ScanResult>> scanClass(ClassReader reader) {
+        return scanClass(reader, null);
+    }
+
+    /**
+     * Scan the given class, recording where the time goes.
+     * <p>
+     * If the plan combines several configs, the results of every config are merged.
+     *
+     * @param reader  The class to scan.
+     * @param metrics The recorder for this class, or {@code null} to record nothing.
+     * @return The results, keyed by method name and descriptor. Empty if nothing was found.
+     */
+    default Map<String, List<ScanResult>> scanClass(ClassReader reader, @Nullable ScanMetrics.Recorder metrics) {
+        List<Map<String, List<ScanResult>>> results = scanClassByConfig(reader, metrics);
+        if (results.size() == 1) return results.get(0);
+
+        Map<String, List<ScanResult>> merged = new HashMap<>();
+        for (Map<String, List<ScanResult>> configResults : results) {
+            for (Map.Entry<String, List<ScanResult>> entry : configResults.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), e -> new ArrayList<>()).addAll(entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Scan the given class once for every config of the plan.
+     *
+     * @param reader  The class to scan.
+     * @param metrics The recorder for this class, or {@code null} to record nothing.
+     * @return The results of each config, in the order of {@link ScanPlan#getConfigs()}.
+     * Each is keyed by method name and descriptor, and empty if nothing was found.
+     */
+    List<Map<String, List<ScanResult>>> scanClassByConfig(ClassReader reader, @Nullable ScanMetrics.Recorder metrics);
+}
@@ -0,0 +1,360 @@
+package net.covers1624.bcs.engine;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.covers1624.bcs.scanners.Scanner;
+import net.covers1624.bcs.util.ClassHierarchy;
+import net.covers1624.quack.collection.StreamableIterable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AnnotationNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The compiled form of a scanner configuration.
+ * <p>
+ * Groups are numbered in declaration order, allowing a set of excluded
+ * groups to be represented as a bitmask. The {@link DispatchTable} for
+ * any given exclusion mask is computed once and cached.
+ * <p>
+ * Masks are opaque, and must be combined with {@link #union}. Plans with up to
+ * {@link #NARROW_GROUPS} groups use the bits of the mask directly. Larger plans
+ * intern each distinct set of excluded groups, and the mask is its id.
+ * <p>
+ * A plan may combine several configs, so their rules share a single parse of each
+ * class. Each config keeps its own ignore annotations, which only exclude that
+ * config's groups, and results are attributed back to the config of the scanner
+ * which produced them.
+ */
+public final class ScanPlan {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * The number of groups which fit directly in a mask.
+     */
+    public static final int NARROW_GROUPS = Long.SIZE;
+
+    private final List<Config> configs;
+    private final Set<String> ignoreAnnotations;
+    private final List<ScanGroup> groups;
+    private final List<Object2IntMap<String>> groupIndices;
+    private final long[] groupMasks;
+    private final long[] configMasks;
+    private final Reference2IntMap<Scanner> scannerConfigs = new Reference2IntOpenHashMap<>();
+    private final long allGroupsMask;
+
+    // Only used by wide plans, the id of each mask is its index. Sets are never modified once interned.
+    private final boolean wide;
+    private final List<BitSet> wideSets = new CopyOnWriteArrayList<>();
+    private final Map<BitSet, Long> wideIds = new ConcurrentHashMap<>();
+
+    private final DispatchTable allScanners;
+    private final List<Scanner> wholeProgramScanners;
+    @Nullable
+    private final Set<String> constantPoolPrefixes;
+    private final ConstantPoolFilter constantPoolFilter;
+    private final Map<Long, DispatchTable> tableCache = new ConcurrentHashMap<>();
+
+    public ScanPlan(Set<String> ignoreAnnotations, Map<String, List<Scanner>> groups) {
+        this(List.of(new Config("", ignoreAnnotations, groups)));
+    }
+
+    public ScanPlan(List<Config> configs) {
+        if (configs.isEmpty()) throw new IllegalArgumentException("Expected at least one config.");
+        int groupCount = 0;
+        for (Config config : configs) {
+            groupCount += config.groups().size();
+        }
+        this.configs = List.copyOf(configs);
+        wide = groupCount > NARROW_GROUPS;
+        if (wide) {
+            intern(new BitSet());
+        }
+
+        Set<String> ignoreAnnotations = new HashSet<>();
+        List<ScanGroup> groupList = new ArrayList<>(groupCount);
+        List<Object2IntMap<String>> groupIndices = new ArrayList<>(configs.size());
+        groupMasks = new long[groupCount];
+        configMasks = new long[configs.size()];
+        scannerConfigs.defaultReturnValue(-1);
+        for (int config = 0; config < configs.size(); config++) {
+            Config cfg = configs.get(config);
+            ignoreAnnotations.addAll(cfg.ignoreAnnotations());
+            Object2IntMap<String> indices = new Object2IntOpenHashMap<>();
+            indices.defaultReturnValue(-1);
+            for (Map.Entry<String, List<Scanner>> entry : cfg.groups().entrySet()) {
+                int index = groupList.size();
+                // Group names only need to be unique within their config.
+                String name = configs.size() == 1 ? entry.getKey() : cfg.name() + "/" + entry.getKey();
+                ScanGroup group = new ScanGroup(name, index, config, List.copyOf(entry.getValue()));
+                groupList.add(group);
+                indices.put(entry.getKey(), index);
+                groupMasks[index] = toMask(index, index + 1);
+                for (Scanner scanner : group.scanners()) {
+                    if (scannerConfigs.put(scanner, config) != -1) {
+                        throw new IllegalArgumentException("Scanner instances can't be shared between configs.");
+                    }
+                }
+            }
+            groupIndices.add(indices);
+            configMasks[config] = toMask(groupList.size() - cfg.groups().size(), groupList.size());
+        }
+        this.ignoreAnnotations = Set.copyOf(ignoreAnnotations);
+        this.groups = List.copyOf(groupList);
+        this.groupIndices = List.copyOf(groupIndices);
+        allGroupsMask = toMask(0, groupCount);
+
+        allScanners = buildTable(0);
+        wholeProgramScanners = StreamableIterable.of(this.groups)
+                .flatMap(ScanGroup::scanners)
+                .filter(Scanner::isWholeProgram)
+                .toImmutableList();
+        constantPoolPrefixes = collectConstantPoolPrefixes();
+        constantPoolFilter = ConstantPoolFilter.build(constantPoolPrefixes);
+    }
+
+    public List<ScanGroup> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return The configs combined by this plan, results are indexed in this order.
+     */
+    public List<Config> getConfigs() {
+        return configs;
+    }
+
+    /**
+     * @param scanner A scanner of this plan.
+     * @return The index of the config the scanner belongs to.
+     */
+    public int getConfigIndex(Scanner scanner) {
+        if (configs.size() == 1) return 0;
+
+        int config = scannerConfigs.getInt(scanner);
+        if (config == -1) throw new IllegalArgumentException("Scanner is not part of this plan.");
+        return config;
+    }
+
+    /**
+     * @return The scanners which need every class to be scanned, see {@link Scanner#isWholeProgram()}.
+     */
+    public List<Scanner> getWholeProgramScanners() {
+        return wholeProgramScanners;
+    }
+
+    /**
+     * @return The filter used to skip classes which can not match any scanner.
+     */
+    public ConstantPoolFilter getConstantPoolFilter() {
+        return constantPoolFilter;
+    }
+
+    /**
+     * Build a filter which also lets through classes referencing any known subtype
+     * of a class matched by the prefixes, for use with inherited matching.
+     *
+     * @param hierarchy The hierarchy.
+     * @return The filter.
+     */
+    public ConstantPoolFilter buildConstantPoolFilter(ClassHierarchy hierarchy) {
+        if (constantPoolPrefixes == null) return ConstantPoolFilter.ALL;
+
+        Set<String> prefixes = new HashSet<>(constantPoolPrefixes);
+        for (int id = 0; id < hierarchy.size(); id++) {
+            BitSet ancestors = hierarchy.getAncestors(id);
+            for (int ancestor = ancestors.nextSetBit(0); ancestor >= 0; ancestor = ancestors.nextSetBit(ancestor + 1)) {
+                if (startsWithAny(hierarchy.getName(ancestor), constantPoolPrefixes)) {
+                    prefixes.add(hierarchy.getName(id));
+                    break;
+                }
+            }
+        }
+        return ConstantPoolFilter.build(prefixes);
+    }
+
+    private static boolean startsWithAny(String name, Set<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the {@link DispatchTable} containing the scanners of every
+     * group not present in the given exclusion mask.
+     *
+     * @param excludedGroups The exclusion mask.
+     * @return The table.
+     */
+    public DispatchTable getTable(long excludedGroups) {
+        if (!wide) {
+            excludedGroups &= allGroupsMask;
+        }
+        if (excludedGroups == 0) return allScanners;
+        if (excludedGroups == allGroupsMask) return DispatchTable.EMPTY;
+
+        return tableCache.computeIfAbsent(excludedGroups, this::buildTable);
+    }
+
+    /**
+     * Compute the exclusion mask for the given set of annotations.
+     *
+     * @param annotations The annotations present on a class or method.
+     * @return The exclusion mask.
+     */
+    public long getExclusionMask(@Nullable List<AnnotationNode> annotations) {
+        if (annotations == null || annotations.isEmpty()) return 0;
+
+        long mask = 0;
+        for (AnnotationNode annotation : annotations) {
+            if (!ignoreAnnotations.contains(annotation.desc)) continue;
+
+            // Each config's ignore annotations only exclude its own groups.
+            for (int config = 0; config < configs.size(); config++) {
+                if (!configs.get(config).ignoreAnnotations().contains(annotation.desc)) continue;
+
+                if (annotation.values == null) {
+                    mask = union(mask, configMasks[config]);
+                } else if (annotation.values.size() != 2) {
+                    LOGGER.warn("Failed to parse ignore annotation. Expected 2 values. Got :" + annotation.values);
+                } else {
+                    mask = union(mask, getMask(config, annotation.values.get(1)));
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param desc The annotation descriptor.
+     * @return If the annotation is configured as an ignore annotation.
+     */
+    public boolean isIgnoreAnnotation(String desc) {
+        return ignoreAnnotations.contains(desc);
+    }
+
+    /**
+     * @param excludedGroups The exclusion mask.
+     * @return If the given mask excludes every group.
+     */
+    public boolean isAllExcluded(long excludedGroups) {
+        if (wide) return excludedGroups == allGroupsMask;
+
+        return (excludedGroups & allGroupsMask) == allGroupsMask;
+    }
+
+    /**
+     * Combine two exclusion masks.
+     *
+     * @param a The first mask.
+     * @param b The second mask.
+     * @return A mask excluding the groups of both.
+     */
+    public long union(long a, long b) {
+        if (!wide) return a | b;
+        if (a == 0 || a == b) return b;
+        if (b == 0) return a;
+
+        BitSet set = (BitSet) wideSets.get((int) a).clone();
+        set.or(wideSets.get((int) b));
+        return intern(set);
+    }
+
+    // The mask excluding the groups from start, inclusive, to end, exclusive.
+    private long toMask(int start, int end) {
+        if (start == end) return 0;
+        if (!wide) return (end == Long.SIZE ? 0 : 1L << end) - (1L << start);
+
+        BitSet set = new BitSet();
+        set.set(start, end);
+        return intern(set);
+    }
+
+    private boolean isExcluded(long excludedGroups, int index) {
+        if (!wide) return (excludedGroups & 1L << index) != 0;
+
+        return wideSets.get((int) excludedGroups).get(index);
+    }
+
+    private synchronized long intern(BitSet set) {
+        Long id = wideIds.get(set);
+        if (id != null) return id;
+
+        id = (long) wideSets.size();
+        wideSets.add(set);
+        wideIds.put(set, id);
+        return id;
+    }
+
+    private long getMask(int config, Object obj) {
+        if (obj instanceof String s) {
+            if (s.equals("*")) return configMasks[config];
+
+            int index = groupIndices.get(config).getInt(s);
+            return index != -1 ? groupMasks[index] : 0;
+        }
+        if (obj instanceof List<?> list) {
+            long mask = 0;
+            for (Object o : list) {
+                mask = union(mask, getMask(config, o));
+            }
+            return mask;
+        }
+        LOGGER.info("Unknown value type in ignore annotation: {}:{}", obj.getClass(), obj);
+        return 0;
+    }
+
+    @Nullable
+    private Set<String> collectConstantPoolPrefixes() {
+        Set<String> prefixes = new HashSet<>();
+        for (ScanGroup group : groups) {
+            for (Scanner scanner : group.scanners()) {
+                Collection<String> scannerPrefixes = scanner.getConstantPoolPrefixes();
+                if (scannerPrefixes == null) {
+                    LOGGER.debug("Constant pool prefilter disabled, {} in group '{}' may match any class.", scanner.getClass().getSimpleName(), group.name());
+                    return null;
+                }
+                prefixes.addAll(scannerPrefixes);
+            }
+        }
+        return prefixes;
+    }
+
+    private DispatchTable buildTable(long excludedGroups) {
+        return DispatchTable.build(StreamableIterable.of(groups)
+                .filterNot(e -> isExcluded(excludedGroups, e.index()))
+                .flatMap(ScanGroup::scanners)
+        );
+    }
+
+    /**
+     * A single config, before it is compiled into a plan.
+     *
+     * @param name              The name of the config, used to attribute results.
+     * @param ignoreAnnotations The descriptors of annotations which exclude groups of this config.
+     * @param groups            The groups of scanners, by name.
+     */
+    public record Config(String name, Set<String> ignoreAnnotations, Map<String, List<Scanner>> groups) {
+    }
+
+    /**
+     * @param name   The name of the group, prefixed with its config's name if the plan has several.
+     * @param config The index of the config the group belongs to.
+     */
+    public record ScanGroup(String name, int index, int config, List<Scanner> scanners) {
+    }
+}
@@ -0,0 +1,342 @@
+package net.covers1624.bcs.engine;
+
+import net.covers1624.bcs.metrics.ScanMetrics;
+import net.covers1624.bcs.scanners.Declaration.Kind;
+import net.covers1624.bcs.scanners.ScanContext;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * A {@link ScanEngine} which passes instructions to scanners as they are
+ * read by the {@link ClassReader}, without building a {@link ClassNode} tree.
+ * <p>
+ * Instruction nodes are only created for opcodes a scanner is interested in.
+ * Line numbers and instruction indexes are tracked as the method is read and
+ * match those reported by {@link TreeScanEngine}.
+ */
+public class StreamingScanEngine implements ScanEngine {
+
+    private final ScanPlan plan;
+
+    public StreamingScanEngine(ScanPlan plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public List<Map<String, List<ScanResult>>> scanClassByConfig(ClassReader reader, @Nullable ScanMetrics.Recorder metrics) {
+        ClassScanner visitor = new ClassScanner(reader, metrics);
+        reader.accept(visitor, ClassReader.SKIP_FRAMES);
+        return visitor.methodResults;
+    }
+
+    @Nullable
+    private AnnotationVisitor collectIgnoreAnnotation(List<AnnotationNode> annotations, String desc, boolean visible) {
+        if (!visible || !plan.isIgnoreAnnotation(desc)) return null;
+
+        AnnotationNode node = new AnnotationNode(desc);
+        annotations.add(node);
+        return node;
+    }
+
+    private class ClassScanner extends ClassVisitor {
+
+        private final ClassReader reader;
+        @Nullable
+        private final ScanMetrics.Recorder metrics;
+        private final List<Map<String, List<ScanResult>>> methodResults = DeclarationContext.newResults(plan);
+        private final List<AnnotationNode> annotations = new ArrayList<>(0);
+
+        private String className;
+        private int access;
+        @Nullable
+        private String superName;
+        @Nullable
+        private String[] interfaces;
+        @Nullable
+        private String signature;
+        private boolean resolved;
+        private long excludedByClass;
+
+        public ClassScanner(ClassReader reader, @Nullable ScanMetrics.Recorder metrics) {
+            super(ASM9);
+            this.reader = reader;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            className = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.signature = signature;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            return collectIgnoreAnnotation(annotations, descriptor, visible);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            resolve();
+            // Field annotations can only exclude more scanners.
+            if (plan.getTable(excludedByClass).getDeclarationScanners().length == 0) return null;
+
+            return new FieldScanner(this, access, name, descriptor, signature);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            resolve();
+            if (plan.isAllExcluded(excludedByClass)) return null;
+
+            return new MethodScanner(this, access, name, descriptor, signature, exceptions);
+        }
+
+        @Override
+        public void visitEnd() {
+            resolve();
+        }
+
+        // Class annotations are all visited before the first member.
+        private void resolve() {
+            if (resolved) return;
+            resolved = true;
+
+            excludedByClass = plan.getExclusionMask(annotations);
+            if (plan.isAllExcluded(excludedByClass)) return;
+
+            DeclarationContext decls = DeclarationContext.forClass(className, access, plan, plan.getTable(excludedByClass), metrics);
+            decls.declare(Kind.SUPER_CLASS, superName);
+            if (interfaces != null) {
+                decls.declareAll(Kind.INTERFACE, Arrays.asList(interfaces));
+            }
+            decls.declare(Kind.SIGNATURE, signature);
+            decls.putResults(methodResults);
+        }
+    }
+
+    private class FieldScanner extends FieldVisitor {
+
+        private final ClassScanner owner;
+        private final int access;
+        private final String name;
+        private final String desc;
+        @Nullable
+        private final String signature;
+        private final List<AnnotationNode> annotations = new ArrayList<>(0);
+
+        public FieldScanner(ClassScanner owner, int access, String name, String desc, @Nullable String signature) {
+            super(ASM9);
+            this.owner = owner;
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            return collectIgnoreAnnotation(annotations, descriptor, visible);
+        }
+
+        @Override
+        public void visitEnd() {
+            DispatchTable table = plan.getTable(plan.union(owner.excludedByClass, plan.getExclusionMask(annotations)));
+            DeclarationContext decls = new DeclarationContext(owner.className, owner.access, name, desc, access, plan, table, owner.metrics);
+            decls.declare(Kind.FIELD, desc);
+            decls.declare(Kind.SIGNATURE, signature);
+            decls.putResults(owner.methodResults);
+        }
+    }
+
+    private class MethodScanner extends MethodVisitor implements ScanContext {
+
+        private final ClassScanner owner;
+        private final int access;
+        private final String name;
+        private final String desc;
+        @Nullable
+        private final String signature;
+        @Nullable
+        private final String[] exceptions;
+        private final List<AnnotationNode> annotations = new ArrayList<>(0);
+
+        private DispatchTable table = DispatchTable.EMPTY;
+        @Nullable
+        private DeclarationContext decls;
+        @Nullable
+        private MethodNode methodNode;
+        @Nullable
+        private Map<Object, Object> data;
+        private int line = -1;
+        private int index;
+        private int instructions;
+
+        public MethodScanner(ClassScanner owner, int access, String name, String desc, @Nullable String signature, @Nullable String[] exceptions) {
+            super(ASM9);
+            this.owner = owner;
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+            this.exceptions = exceptions;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            return collectIgnoreAnnotation(annotations, descriptor, visible);
+        }
+
+        @Override
+        public void visitCode() {
+            start();
+        }
+
+        // Method annotations are all visited before the code, or the end for abstract methods.
+        private DeclarationContext start() {
+            if (decls != null) return decls;
+
+            table = plan.getTable(plan.union(owner.excludedByClass, plan.getExclusionMask(annotations)));
+            decls = new DeclarationContext(owner.className, owner.access, name, desc, access, plan, table, owner.metrics);
+            decls.declare(Kind.METHOD, desc);
+            if (exceptions != null) {
+                decls.declareAll(Kind.EXCEPTION, Arrays.asList(exceptions));
+            }
+            decls.declare(Kind.SIGNATURE, signature);
+            return decls;
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            start().declare(Kind.TRY_CATCH, type);
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+            DeclarationContext decls = start();
+            decls.declare(Kind.LOCAL_VARIABLE, descriptor);
+            decls.declare(Kind.SIGNATURE, signature);
+        }
+
+        // @formatter:off
+        @Override public void visitLabel(Label label) { index++; }
+        @Override public void visitLineNumber(int line, Label start) { this.line = line; index++; }
+        @Override public void visitInsn(int opcode) { if (wants(opcode)) dispatch(new InsnNode(opcode)); index++; }
+        @Override public void visitIntInsn(int opcode, int operand) { if (wants(opcode)) dispatch(new IntInsnNode(opcode, operand)); index++; }
+        @Override public void visitVarInsn(int opcode, int var) { if (wants(opcode)) dispatch(new VarInsnNode(opcode, var)); index++; }
+        @Override public void visitTypeInsn(int opcode, String type) { if (wants(opcode)) dispatch(new TypeInsnNode(opcode, type)); index++; }
+        @Override public void visitFieldInsn(int opcode, String owner, String name, String desc) { if (wants(opcode)) dispatch(new FieldInsnNode(opcode, owner, name, desc)); index++; }
+        @Override public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) { if (wants(opcode)) dispatch(new MethodInsnNode(opcode, owner, name, desc, itf)); index++; }
+        @Override public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) { if (wants(INVOKEDYNAMIC)) dispatch(new InvokeDynamicInsnNode(name, desc, bsm, bsmArgs)); index++; }
+        @Override public void visitJumpInsn(int opcode, Label label) { if (wants(opcode)) dispatch(new JumpInsnNode(opcode, new LabelNode(label))); index++; }
+        @Override public void visitLdcInsn(Object value) { if (wants(LDC)) dispatch(new LdcInsnNode(value)); index++; }
+        @Override public void visitIincInsn(int var, int increment) { if (wants(IINC)) dispatch(new IincInsnNode(var, increment)); index++; }
+        @Override public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) { if (wants(TABLESWITCH)) dispatch(new TableSwitchInsnNode(min, max, new LabelNode(dflt), labelNodes(labels))); index++; }
+        @Override public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) { if (wants(LOOKUPSWITCH)) dispatch(new LookupSwitchInsnNode(new LabelNode(dflt), keys, labelNodes(labels))); index++; }
+        @Override public void visitMultiANewArrayInsn(String desc, int numDimensions) { if (wants(MULTIANEWARRAY)) dispatch(new MultiANewArrayInsnNode(desc, numDimensions)); index++; }
+        // @formatter:on
+
+        @Override
+        public void visitEnd() {
+            start().putMethodResults(owner.methodResults);
+            // The tree engine skips methods no scanner is interested in.
+            if (owner.metrics != null && !table.isEmpty()) {
+                owner.metrics.method(instructions);
+            }
+        }
+
+        // Called exactly once for every real instruction.
+        private boolean wants(int opcode) {
+            instructions++;
+            return table.get(opcode).length != 0;
+        }
+
+        private void dispatch(AbstractInsnNode insn) {
+            start().scan(table.get(insn.getOpcode()), insn, this);
+        }
+
+        @Override
+        public String getClassName() {
+            return owner.className;
+        }
+
+        @Override
+        public int getClassAccess() {
+            return owner.access;
+        }
+
+        @Override
+        public String getMethodName() {
+            return name;
+        }
+
+        @Override
+        public String getMethodDesc() {
+            return desc;
+        }
+
+        @Override
+        public int getMethodAccess() {
+            return access;
+        }
+
+        @Override
+        public Location getLocation() {
+            return new Location(line, index);
+        }
+
+        @Override
+        public MethodNode getMethodNode() {
+            if (methodNode == null) {
+                methodNode = readMethod(owner.reader, name, desc);
+            }
+            return methodNode;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getMethodData(Object key, Supplier<T> factory) {
+            if (data == null) {
+                data = new HashMap<>();
+            }
+            return (T) data.computeIfAbsent(key, e -> factory.get());
+        }
+    }
+
+    // Read a single method into a tree, with the same flags as the scan so instruction indexes line up.
+    private static MethodNode readMethod(ClassReader reader, String name, String desc) {
+        MethodNode[] found = { null };
+        reader.accept(new ClassVisitor(ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String mName, String mDesc, String signature, String[] exceptions) {
+                if (!mName.equals(name) || !mDesc.equals(desc)) return null;
+
+                return found[0] = new MethodNode(ASM9, access, mName, mDesc, signature, exceptions);
+            }
+        }, ClassReader.SKIP_FRAMES);
+        if (found[0] == null) throw new IllegalStateException("Method " + name + desc + " disappeared from " + reader.getClassName());
+        return found[0];
+    }
+
+    private static LabelNode[] labelNodes(Label[] labels) {
+        LabelNode[] nodes = new LabelNode[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            nodes[i] = new LabelNode(labels[i]);
+        }
+        return nodes;
+    }
+}
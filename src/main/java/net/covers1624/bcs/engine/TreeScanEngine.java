@@ -0,0 +1,154 @@
+package net.covers1624.bcs.engine;
+
+import net.covers1624.bcs.metrics.ScanMetrics;
+import net.covers1624.bcs.scanners.Declaration.Kind;
+import net.covers1624.bcs.scanners.ScanContext;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ScanEngine} which reads each class into a {@link ClassNode} tree
+ * and walks its methods.
+ */
+public class TreeScanEngine implements ScanEngine {
+
+    private final ScanPlan plan;
+
+    public TreeScanEngine(ScanPlan plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public List<Map<String, List<ScanResult>>> scanClassByConfig(ClassReader reader, @Nullable ScanMetrics.Recorder metrics) {
+        List<Map<String, List<ScanResult>>> methodResults = DeclarationContext.newResults(plan);
+
+        ClassNode cNode = new ClassNode();
+        reader.accept(cNode, ClassReader.SKIP_FRAMES);
+        long excludedByClass = plan.getExclusionMask(cNode.visibleAnnotations);
+        if (plan.isAllExcluded(excludedByClass)) return methodResults;
+
+        DeclarationContext classDecls = DeclarationContext.forClass(cNode.name, cNode.access, plan, plan.getTable(excludedByClass), metrics);
+        classDecls.declare(Kind.SUPER_CLASS, cNode.superName);
+        classDecls.declareAll(Kind.INTERFACE, cNode.interfaces);
+        classDecls.declare(Kind.SIGNATURE, cNode.signature);
+        classDecls.putResults(methodResults);
+
+        for (FieldNode fNode : cNode.fields) {
+            DispatchTable table = plan.getTable(plan.union(excludedByClass, plan.getExclusionMask(fNode.visibleAnnotations)));
+            DeclarationContext decls = new DeclarationContext(cNode.name, cNode.access, fNode.name, fNode.desc, fNode.access, plan, table, metrics);
+            decls.declare(Kind.FIELD, fNode.desc);
+            decls.declare(Kind.SIGNATURE, fNode.signature);
+            decls.putResults(methodResults);
+        }
+
+        TreeContext ctx = new TreeContext(cNode);
+        for (MethodNode mNode : cNode.methods) {
+            DispatchTable table = plan.getTable(plan.union(excludedByClass, plan.getExclusionMask(mNode.visibleAnnotations)));
+            if (table.isEmpty()) continue;
+
+            ctx.mNode = mNode;
+            ctx.data = null;
+            ctx.line = -1;
+            ctx.index = -1;
+            int instructions = 0;
+            // Results are kept in the order the streaming engine finds them.
+            DeclarationContext decls = new DeclarationContext(cNode.name, cNode.access, mNode.name, mNode.desc, mNode.access, plan, table, metrics);
+            decls.declare(Kind.METHOD, mNode.desc);
+            decls.declareAll(Kind.EXCEPTION, mNode.exceptions);
+            decls.declare(Kind.SIGNATURE, mNode.signature);
+            for (TryCatchBlockNode tryCatch : mNode.tryCatchBlocks) {
+                decls.declare(Kind.TRY_CATCH, tryCatch.type);
+            }
+            for (AbstractInsnNode insn : mNode.instructions) {
+                // Track the location as we go, looking it up per result is linear in the method size.
+                ctx.index++;
+                if (insn.getType() == AbstractInsnNode.LINE) {
+                    ctx.line = ((LineNumberNode) insn).line;
+                    continue;
+                }
+                int opcode = insn.getOpcode();
+                if (opcode == -1) continue;
+
+                instructions++;
+                decls.scan(table.get(opcode), insn, ctx);
+            }
+            if (mNode.localVariables != null) {
+                for (LocalVariableNode local : mNode.localVariables) {
+                    decls.declare(Kind.LOCAL_VARIABLE, local.desc);
+                    decls.declare(Kind.SIGNATURE, local.signature);
+                }
+            }
+            decls.putMethodResults(methodResults);
+            if (metrics != null) {
+                metrics.method(instructions);
+            }
+        }
+        return methodResults;
+    }
+
+    private static class TreeContext implements ScanContext {
+
+        private final ClassNode cNode;
+        private MethodNode mNode;
+        @Nullable
+        private Map<Object, Object> data;
+        private int line;
+        private int index;
+
+        private TreeContext(ClassNode cNode) {
+            this.cNode = cNode;
+        }
+
+        @Override
+        public String getClassName() {
+            return cNode.name;
+        }
+
+        @Override
+        public int getClassAccess() {
+            return cNode.access;
+        }
+
+        @Override
+        public String getMethodName() {
+            return mNode.name;
+        }
+
+        @Override
+        public String getMethodDesc() {
+            return mNode.desc;
+        }
+
+        @Override
+        public int getMethodAccess() {
+            return mNode.access;
+        }
+
+        @Override
+        public Location getLocation() {
+            return new Location(line, index);
+        }
+
+        @Override
+        public MethodNode getMethodNode() {
+            return mNode;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getMethodData(Object key, Supplier<T> factory) {
+            if (data == null) {
+                data = new HashMap<>();
+            }
+            return (T) data.computeIfAbsent(key, e -> factory.get());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package net.covers1624.bcs.input;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches directory trees for class files being added, modified or deleted.
+ * <p>
+ * Events are debounced, a compiler writing thousands of classes produces a
+ * single batch of {@link Changes} once things go quiet.
+ */
+public final class ClassWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    private final WatchService service;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    public ClassWatcher(Collection<Path> roots) throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        for (Path root : roots) {
+            registerAll(root, null);
+        }
+    }
+
+    /**
+     * Wait for the next batch of changes.
+     * <p>
+     * Blocks until at least one event arrives, then until no events
+     * have arrived for a short while.
+     *
+     * @return The changes.
+     * @throws IOException          If an IO error occurs.
+     * @throws InterruptedException If interrupted whilst waiting.
+     */
+    public Changes poll() throws IOException, InterruptedException {
+        Set<Path> changed = new LinkedHashSet<>();
+        Set<Path> deleted = new LinkedHashSet<>();
+        boolean overflow = false;
+
+        WatchKey key = service.take();
+        while (key != null) {
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                if (dir == null) continue;
+
+                Path file = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(file)) {
+                    // Classes may have been written before we could register the directory.
+                    registerAll(file, changed);
+                } else if (isClass(file)) {
+                    if (event.kind() == ENTRY_DELETE) {
+                        changed.remove(file);
+                        deleted.add(file);
+                    } else {
+                        deleted.remove(file);
+                        changed.add(file);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+            key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return new Changes(changed, deleted, overflow);
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private void registerAll(Path root, @Nullable Set<Path> found) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                if (Files.isDirectory(path)) {
+                    keys.put(path.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+                } else if (found != null && isClass(path)) {
+                    found.add(path);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            LOGGER.debug("Directory {} vanished before it could be watched.", root);
+        }
+    }
+
+    private static boolean isClass(Path path) {
+        return path.getFileName().toString().endsWith(".class");
+    }
+
+    /**
+     * A batch of changes.
+     *
+     * @param changed  Class files which were added or modified.
+     * @param deleted  Class files which were deleted.
+     * @param overflow If events were lost, everything should be re-scanned.
+     */
+    public record Changes(Set<Path> changed, Set<Path> deleted, boolean overflow) {
+    }
+}
@@ -0,0 +1,243 @@
+package net.covers1624.bcs.input;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds every class in a set of inputs and submits it to a {@link Target}.
+ * <p>
+ * Inputs may be directories or jars. Jars found inside directories are scanned,
+ * as are jars nested inside other jars (e.g. {@code META-INF/jars}), which are
+ * read in memory and never extracted to disk.
+ * <p>
+ * Walking stops early once the target is cancelled, see {@link Target#isCancelled()}.
+ * <p>
+ * The walk is deterministic. Directories are walked in sorted order and jars in the
+ * order of their entries, every class is given its position in the walk as an index.
+ * Given a {@link Shard}, only the classes in that shard are submitted, but every
+ * class still counts towards the index, so indexes agree between shards.
+ * <p>
+ * Each class is identified by a path made up of the archives it was found in,
+ * separated by {@code !/}, followed by its class name. For example
+ * {@code mods/example.jar!/META-INF/jars/library.jar!/com/example/Foo}.
+ */
+public final class InputWalker {
+
+    private final Target target;
+    @Nullable
+    private final Shard shard;
+    private long nextIndex;
+
+    public InputWalker(Target target) {
+        this(target, null);
+    }
+
+    public InputWalker(Target target, @Nullable Shard shard) {
+        this.target = target;
+        this.shard = shard;
+    }
+
+    /**
+     * Walk the given input.
+     *
+     * @param input  The directory, jar or single class file.
+     * @param prefix The prefix to give each class found in this input.
+     * @throws IOException If an IO error occurs.
+     */
+    public void walk(Path input, String prefix) throws IOException {
+        if (target.isCancelled()) return;
+
+        if (Files.isDirectory(input)) {
+            walkDir(input, prefix);
+        } else if (isJar(input.getFileName().toString())) {
+            walkJar(input, prefix);
+        } else if (input.getFileName().toString().endsWith(".class")) {
+            long index = nextIndex++;
+            if (inShard(prefix + input.getFileName())) {
+                target.submitRead(index, prefix, () -> Files.readAllBytes(input));
+            }
+        }
+    }
+
+    private void walkDir(Path root, String prefix) throws IOException {
+        // Listing order depends on the filesystem, sort so every host agrees.
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparing(e -> relative(root, e)))
+                    .toList();
+        }
+        for (Path file : files) {
+            if (target.isCancelled()) return;
+
+            String name = file.getFileName().toString();
+            if (name.endsWith(".class")) {
+                long index = nextIndex++;
+                if (inShard(prefix + relative(root, file))) {
+                    target.submitRead(index, prefix, () -> Files.readAllBytes(file));
+                }
+            } else if (isJar(name)) {
+                walkJar(file, prefix + relative(root, file) + "!/");
+            }
+        }
+    }
+
+    private void walkJar(Path jar, String prefix) throws IOException {
+        ZipFile zip = new ZipFile(jar.toFile());
+        // The zip is shared by all the tasks reading from it, the last one out closes it.
+        AtomicInteger refs = new AtomicInteger(1);
+        try {
+            List<? extends ZipEntry> entries = zip.stream()
+                    .filter(e -> !e.isDirectory())
+                    .toList();
+            for (ZipEntry entry : entries) {
+                if (target.isCancelled()) return;
+
+                String name = entry.getName();
+                if (name.endsWith(".class")) {
+                    long index = nextIndex++;
+                    if (!inShard(prefix + name)) continue;
+
+                    refs.incrementAndGet();
+                    try {
+                        target.submitRead(index, prefix, new ClassReadTask() {
+                            @Override
+                            public byte[] read() throws IOException {
+                                try (InputStream is = zip.getInputStream(entry)) {
+                                    return readEntry(is, (int) entry.getSize());
+                                } finally {
+                                    release(zip, refs);
+                                }
+                            }
+
+                            @Override
+                            public void discard() throws IOException {
+                                release(zip, refs);
+                            }
+                        });
+                    } catch (IOException ex) {
+                        release(zip, refs);
+                        throw ex;
+                    }
+                } else if (isJar(name)) {
+                    byte[] nested;
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        nested = is.readAllBytes();
+                    }
+                    walkNestedJar(nested, prefix + name + "!/");
+                }
+            }
+        } finally {
+            release(zip, refs);
+        }
+    }
+
+    private void walkNestedJar(byte[] jar, String prefix) throws IOException {
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = zin.getNextEntry()) != null) {
+                if (target.isCancelled()) return;
+                if (entry.isDirectory()) continue;
+
+                String name = entry.getName();
+                if (name.endsWith(".class")) {
+                    long index = nextIndex++;
+                    if (!inShard(prefix + name)) continue;
+
+                    // Entries of a ZipInputStream must be read in order, so read
+                    // them here. The target being bounded keeps this in check.
+                    target.submit(index, prefix, zin.readAllBytes());
+                } else if (isJar(name)) {
+                    walkNestedJar(zin.readAllBytes(), prefix + name + "!/");
+                }
+            }
+        }
+    }
+
+    private boolean inShard(String entry) {
+        return shard == null || shard.contains(entry);
+    }
+
+    private static String relative(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static byte[] readEntry(InputStream is, int size) throws IOException {
+        if (size < 0) return is.readAllBytes();
+
+        byte[] bytes = new byte[size];
+        int len = is.readNBytes(bytes, 0, size);
+        if (len != size) throw new EOFException("Expected " + size + " bytes, got " + len);
+        return bytes;
+    }
+
+    private static void release(ZipFile zip, AtomicInteger refs) throws IOException {
+        if (refs.decrementAndGet() == 0) {
+            zip.close();
+        }
+    }
+
+    private static boolean isJar(String name) {
+        return name.endsWith(".jar");
+    }
+
+    public interface Target {
+
+        /**
+         * Submit a class which still needs to be read. Blocks if too many reads are pending.
+         * <p>
+         * The task must eventually be either read or discarded, unless this throws.
+         *
+         * @param index  The position of the class in the walk.
+         * @param prefix The prefix of the input, followed by the path of any archives the class
+         *               was found in. Empty for classes directly inside a lone input.
+         * @param task   The task which reads the class bytes.
+         * @throws IOException If an IO error occurs.
+         */
+        void submitRead(long index, String prefix, ClassReadTask task) throws IOException;
+
+        /**
+         * Submit a class which has already been read. Blocks if too many classes are pending.
+         *
+         * @param index  The position of the class in the walk.
+         * @param prefix The prefix of the class, as above.
+         * @param bytes  The class bytes.
+         * @throws IOException If an IO error occurs.
+         */
+        void submit(long index, String prefix, byte[] bytes) throws IOException;
+
+        /**
+         * @return If the target no longer wants classes, walking stops as soon as possible.
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    public interface ClassReadTask {
+
+        byte[] read() throws IOException;
+
+        /**
+         * Called instead of {@link #read()} when the class is dropped without being read,
+         * to release anything the task holds onto.
+         *
+         * @throws IOException If an IO error occurs.
+         */
+        default void discard() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package net.covers1624.bcs.input;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.covers1624.bcs.input.InputWalker.ClassReadTask;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A three stage pipeline which reads, scans and collects classes.
+ * <ol>
+ *     <li>IO: Blocking reads, run on virtual threads when the runtime supports them,
+ *     otherwise on a dedicated pool. At most {@code ioThreads} classes are being read,
+ *     or waiting to be handed to a scan worker, at once.</li>
+ *     <li>Scan: A fixed pool of platform threads which parse and scan classes.</li>
+ *     <li>Sink: A single thread which receives every result, in the order classes were submitted.</li>
+ * </ol>
+ * Stages are connected by bounded queues, a slow stage applies backpressure to
+ * the stage before it. Results which complete out of order are held by the sink until
+ * every class submitted before them has completed. Only a fixed window of classes may
+ * be submitted but not yet emitted by the sink, so one slow class blocks submitting
+ * instead of letting the held results grow without bound.
+ * <p>
+ * The first exception thrown by any stage is rethrown by {@link #close()}.
+ * <p>
+ * The pipeline may be cancelled from any thread, including the sink. Once cancelled,
+ * pending classes are dropped without being read or scanned, and classes which are
+ * already being scanned finish but their results are dropped.
+ */
+public final class ScanPipeline<R> implements InputWalker.Target, AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int QUEUE_SIZE_PER_THREAD = 16;
+    private static final ClassData END = new ClassData(-1, -1, "", new byte[0]);
+    private static final Object NO_RESULT = new Object();
+
+    private final Processor<R> processor;
+    private final Sink<R> sink;
+    private final int ioThreads;
+    private final int scanThreads;
+
+    private final ExecutorService ioExecutor;
+    private final Semaphore ioPermits;
+    private final Semaphore window;
+    private final int windowSize;
+    private final BlockingQueue<ClassData> scanQueue;
+    private final BlockingQueue<Object> sinkQueue;
+    private final List<Thread> scanWorkers = new ArrayList<>();
+    private final Thread sinkWorker;
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private volatile boolean cancelled;
+    // Only touched by the thread submitting classes.
+    private long nextSeq;
+
+    private final long startTime = System.nanoTime();
+    private final StageStats ioStats = new StageStats();
+    private final StageStats scanStats = new StageStats();
+    private final StageStats sinkStats = new StageStats();
+    private final LongAdder bytesRead = new LongAdder();
+
+    public ScanPipeline(int ioThreads, int scanThreads, Processor<R> processor, Sink<R> sink) {
+        this.processor = processor;
+        this.sink = sink;
+        this.ioThreads = ioThreads;
+        this.scanThreads = scanThreads;
+
+        ioExecutor = newIoExecutor(ioThreads);
+        ioPermits = new Semaphore(ioThreads);
+        // Enough to fill every stage, so the window only limits how far the
+        // rest may get ahead of a slow class.
+        windowSize = (ioThreads + 2 * scanThreads) * QUEUE_SIZE_PER_THREAD;
+        window = new Semaphore(windowSize);
+        scanQueue = new ArrayBlockingQueue<>(scanThreads * QUEUE_SIZE_PER_THREAD);
+        sinkQueue = new ArrayBlockingQueue<>(scanThreads * QUEUE_SIZE_PER_THREAD);
+
+        for (int i = 0; i < scanThreads; i++) {
+            Thread thread = new Thread(this::runScanWorker, "Scan Worker " + i);
+            thread.setDaemon(true);
+            thread.start();
+            scanWorkers.add(thread);
+        }
+        sinkWorker = new Thread(this::runSinkWorker, "Scan Sink");
+        sinkWorker.setDaemon(true);
+        sinkWorker.start();
+    }
+
+    @Override
+    public void submitRead(long index, String prefix, ClassReadTask task) throws IOException {
+        if (isStopped()) {
+            task.discard();
+            return;
+        }
+
+        acquire(window, "Interrupted whilst waiting for the sink to catch up.");
+        if (isStopped()) {
+            task.discard();
+            return;
+        }
+
+        long seq = nextSeq++;
+        acquire(ioPermits, "Interrupted whilst waiting for space in the IO queue.");
+        ioExecutor.execute(() -> {
+            try {
+                if (isStopped()) {
+                    task.discard();
+                    return;
+                }
+
+                long start = System.nanoTime();
+                byte[] bytes = task.read();
+                ioStats.record(start);
+                bytesRead.add(bytes.length);
+                scanQueue.put(new ClassData(seq, index, prefix, bytes));
+            } catch (Throwable ex) {
+                fail(ex);
+            } finally {
+                ioPermits.release();
+            }
+        });
+    }
+
+    @Override
+    public void submit(long index, String prefix, byte[] bytes) throws IOException {
+        if (isStopped()) return;
+
+        acquire(window, "Interrupted whilst waiting for the sink to catch up.");
+        if (isStopped()) return;
+
+        bytesRead.add(bytes.length);
+        try {
+            scanQueue.put(new ClassData(nextSeq++, index, prefix, bytes));
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException("Interrupted whilst waiting for space in the scan queue.");
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return isStopped();
+    }
+
+    /**
+     * Stop the pipeline. Classes still pending are dropped, and no more results reach the sink.
+     * {@link #close()} must still be called.
+     */
+    public void cancel() {
+        if (cancelled) return;
+
+        cancelled = true;
+        openWindow();
+    }
+
+    /**
+     * @return If {@link #cancel()} was called.
+     */
+    public boolean wasCancelled() {
+        return cancelled;
+    }
+
+    // Failing stops the pipeline the same way cancelling does.
+    private boolean isStopped() {
+        return cancelled || error.get() != null;
+    }
+
+    /**
+     * Wait for every submitted class to pass through all stages, then log
+     * the throughput of each stage.
+     *
+     * @throws IOException If any stage failed with an IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ioExecutor.shutdown();
+            while (!ioExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting.
+            }
+            for (int i = 0; i < scanThreads; i++) {
+                scanQueue.put(END);
+            }
+            for (Thread worker : scanWorkers) {
+                worker.join();
+            }
+            sinkQueue.put(END);
+            sinkWorker.join();
+        } catch (InterruptedException ex) {
+            ioExecutor.shutdownNow();
+            scanWorkers.forEach(Thread::interrupt);
+            sinkWorker.interrupt();
+            throw new InterruptedIOException("Interrupted whilst waiting for the pipeline to complete.");
+        }
+        logStats();
+
+        Throwable ex = error.get();
+        if (ex instanceof IOException e) throw e;
+        if (ex instanceof RuntimeException e) throw e;
+        if (ex instanceof Error e) throw e;
+        if (ex != null) throw new IOException("Pipeline failed.", ex);
+    }
+
+    /**
+     * @return The number of bytes read so far.
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return The time spent reading so far, summed over every IO thread.
+     */
+    public long getIoNanos() {
+        return ioStats.busyNanos.sum();
+    }
+
+    private void runScanWorker() {
+        try {
+            while (true) {
+                ClassData data = scanQueue.take();
+                if (data == END) return;
+                if (isStopped()) continue;
+
+                try {
+                    long start = System.nanoTime();
+                    R result = processor.process(data.index(), data.prefix(), data.bytes());
+                    scanStats.record(start);
+                    // Empty results still need to reach the sink, to keep it in order.
+                    sinkQueue.put(new Sequenced(data.seq(), result != null ? result : NO_RESULT));
+                } catch (Throwable ex) {
+                    fail(ex);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void runSinkWorker() {
+        // Results which arrived before some earlier class finished.
+        Long2ObjectMap<Object> pending = new Long2ObjectOpenHashMap<>();
+        long next = 0;
+        try {
+            while (true) {
+                Object taken = sinkQueue.take();
+                if (taken == END) return;
+                if (isStopped()) continue;
+
+                Sequenced sequenced = (Sequenced) taken;
+                if (sequenced.seq() != next) {
+                    pending.put(sequenced.seq(), sequenced.result());
+                    continue;
+                }
+                Object result = sequenced.result();
+                while (result != null) {
+                    accept(result);
+                    window.release();
+                    result = pending.remove(++next);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(Object result) {
+        if (result == NO_RESULT || isStopped()) return;
+
+        try {
+            long start = System.nanoTime();
+            sink.accept((R) result);
+            sinkStats.record(start);
+        } catch (Throwable ex) {
+            fail(ex);
+        }
+    }
+
+    private void fail(Throwable ex) {
+        if (error.compareAndSet(null, ex)) {
+            openWindow();
+        } else if (error.get() != ex) {
+            error.get().addSuppressed(ex);
+        }
+    }
+
+    // Once stopped, classes are dropped without reaching the sink and never release
+    // their place in the window. Wake a submitter blocked on it so it sees the stop.
+    private void openWindow() {
+        window.release(windowSize);
+    }
+
+    private void logStats() {
+        long wall = System.nanoTime() - startTime;
+        double seconds = wall / 1e9;
+        LOGGER.info("Pipeline {} in {}ms, read {} KiB.", cancelled ? "cancelled" : "finished", TimeUnit.NANOSECONDS.toMillis(wall), bytesRead.sum() / 1024);
+        ioStats.log("IO", ioThreads, wall, seconds);
+        scanStats.log("Scan", scanThreads, wall, seconds);
+        sinkStats.log("Sink", 1, wall, seconds);
+    }
+
+    private static void acquire(Semaphore semaphore, String message) throws InterruptedIOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException(message);
+        }
+    }
+
+    private static ExecutorService newIoExecutor(int threads) {
+        // Virtual threads are only available on Java 21+, use them reflectively when we can.
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException ignored) {
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "IO Worker " + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private record ClassData(long seq, long index, String prefix, byte[] bytes) {
+    }
+
+    private record Sequenced(long seq, Object result) {
+    }
+
+    private static class StageStats {
+
+        private final LongAdder items = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        public void record(long start) {
+            busyNanos.add(System.nanoTime() - start);
+            items.increment();
+        }
+
+        public void log(String stage, int threads, long wall, double seconds) {
+            long count = items.sum();
+            LOGGER.info(" {}: {} classes, {}/s, {} threads {}% busy",
+                    stage,
+                    count,
+                    seconds > 0 ? (long) (count / seconds) : count,
+                    threads,
+                    wall > 0 ? busyNanos.sum() * 100 / (wall * threads) : 0
+            );
+        }
+    }
+
+    public interface Processor<R> {
+
+        /**
+         * Parse and scan a class. Called from a scan worker.
+         *
+         * @param index  The position of the class in the walk of the inputs, see {@link InputWalker}.
+         * @param prefix The prefix of the class, see {@link InputWalker}.
+         * @param bytes  The class bytes.
+         * @return The result to pass to the sink, or {@code null} for nothing.
+         */
+        @Nullable
+        R process(long index, String prefix, byte[] bytes) throws IOException;
+    }
+
+    public interface Sink<R> {
+
+        /**
+         * Receive a result. Only ever called from the sink thread, in the order classes were submitted.
+         *
+         * @param result The result.
+         */
+        void accept(R result) throws IOException;
+    }
+}
@@ -0,0 +1,58 @@
+package net.covers1624.bcs.input;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A deterministic slice of the classes found by an {@link InputWalker}.
+ * <p>
+ * Classes are assigned to a shard by hashing their entry name, the prefix of the
+ * class followed by its path inside the directory or jar. This does not depend on
+ * the host or the order entries are found in, so separate processes given the same
+ * inputs each scan a disjoint slice, and together scan every class.
+ *
+ * @param index The index of this shard, starting from 1.
+ * @param count The total number of shards.
+ */
+public record Shard(int index, int count) {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32_fixed();
+
+    public Shard {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count + ", expected 1 <= index <= count.");
+        }
+    }
+
+    /**
+     * Parse a shard in the form {@code index/count}, e.g {@code 2/8}.
+     *
+     * @param str The string.
+     * @return The shard.
+     */
+    public static Shard parse(String str) {
+        int slash = str.indexOf('/');
+        if (slash == -1) throw new IllegalArgumentException("Expected shard in the form index/count, got: " + str);
+
+        try {
+            return new Shard(Integer.parseInt(str.substring(0, slash)), Integer.parseInt(str.substring(slash + 1)));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Expected shard in the form index/count, got: " + str, ex);
+        }
+    }
+
+    /**
+     * @param entry The entry name of a class.
+     * @return If the class belongs to this shard.
+     */
+    public boolean contains(String entry) {
+        return Math.floorMod(HASH_FUNCTION.hashString(entry, StandardCharsets.UTF_8).asInt(), count) == index - 1;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
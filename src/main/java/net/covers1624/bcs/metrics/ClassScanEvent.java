@@ -0,0 +1,35 @@
+package net.covers1624.bcs.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted for every class parsed and scanned whilst metrics are enabled.
+ * <p>
+ * The duration of the event covers parsing and scanning, not reading.
+ */
+@Name("net.covers1624.bcs.ClassScan")
+@Label("Class Scan")
+@Category("BadCodeScanner")
+@StackTrace(false)
+final class ClassScanEvent extends Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Size")
+    @DataAmount
+    int bytes;
+
+    @Label("Methods")
+    int methods;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Results")
+    int results;
+
+    @Label("Scanner Time")
+    @Timespan
+    long scannerNanos;
+}
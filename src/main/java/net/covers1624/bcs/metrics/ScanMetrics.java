@@ -0,0 +1,419 @@
+package net.covers1624.bcs.metrics;
+
+import com.google.gson.stream.JsonWriter;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import jdk.jfr.FlightRecorder;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.scanners.Declaration;
+import net.covers1624.bcs.scanners.ScanContext;
+import net.covers1624.bcs.scanners.Scanner;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import net.covers1624.bcs.util.OpcodeLookup;
+import net.covers1624.quack.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing where the time of a single scan goes.
+ * <p>
+ * Each class is recorded by its own {@link Recorder}, only ever touched by the scan
+ * worker scanning that class. Recorders batch their counts and add them to the shared
+ * counters once the class is finished. Shared counters are striped, so workers
+ * finishing classes at the same time do not contend.
+ * <p>
+ * Parse time is the time spent in the engine outside of scanners. For the streaming
+ * engine this includes visiting the class, which can't be separated from parsing.
+ * <p>
+ * When metrics are disabled no instance exists, engines are given a {@code null}
+ * recorder and do no timing at all. JFR events are only created when Flight Recorder
+ * is running at the start of the scan, initializing it is expensive.
+ */
+public final class ScanMetrics {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int SLOWEST_CLASSES = 20;
+
+    private final long startTime = System.nanoTime();
+    private final boolean jfr = FlightRecorder.isInitialized();
+    private final List<ScanPlan.ScanGroup> groups;
+    private final Scanner[] scanners;
+    private final ScanPlan.ScanGroup[] scannerGroups;
+    private final Reference2IntMap<Scanner> scannerIds = new Reference2IntOpenHashMap<>();
+
+    private final LongAdder[] scannerNanos;
+    private final LongAdder[] scannerCalls;
+    private final LongAdder[] scannerHits;
+    private final LongAdder classes = new LongAdder();
+    private final LongAdder cachedClasses = new LongAdder();
+    private final LongAdder skippedClasses = new LongAdder();
+    private final LongAdder methods = new LongAdder();
+    private final LongAdder instructions = new LongAdder();
+    private final LongAdder classNanos = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final Map<String, LongAdder> ruleHits = new ConcurrentHashMap<>();
+
+    // Min heap, the fastest of the slowest classes is at the head.
+    private final PriorityQueue<SlowClass> slowest = new PriorityQueue<>(Comparator.comparingLong(SlowClass::nanos));
+    private volatile long slowThreshold;
+
+    private long bytesRead;
+    private long ioNanos;
+    private long finishNanos;
+    private long wallNanos = -1;
+
+    public ScanMetrics(ScanPlan plan) {
+        groups = plan.getGroups();
+        List<Scanner> scanners = new ArrayList<>();
+        List<ScanPlan.ScanGroup> scannerGroups = new ArrayList<>();
+        scannerIds.defaultReturnValue(-1);
+        for (ScanPlan.ScanGroup group : groups) {
+            for (Scanner scanner : group.scanners()) {
+                scannerIds.put(scanner, scanners.size());
+                scanners.add(scanner);
+                scannerGroups.add(group);
+            }
+        }
+        this.scanners = scanners.toArray(new Scanner[0]);
+        this.scannerGroups = scannerGroups.toArray(new ScanPlan.ScanGroup[0]);
+        scannerNanos = newAdders(this.scanners.length);
+        scannerCalls = newAdders(this.scanners.length);
+        scannerHits = newAdders(this.scanners.length);
+    }
+
+    /**
+     * Start recording a class. Called from the scan worker which will scan the class.
+     *
+     * @return The recorder.
+     */
+    public Recorder startClass() {
+        return new Recorder();
+    }
+
+    /**
+     * Record a class whose results came from the cache.
+     */
+    public void recordCached() {
+        cachedClasses.increment();
+    }
+
+    /**
+     * Record a class skipped by the constant pool prefilter.
+     */
+    public void recordSkipped() {
+        skippedClasses.increment();
+    }
+
+    /**
+     * Record the reads performed by the pipeline.
+     *
+     * @param bytes The number of bytes read.
+     * @param nanos The time spent reading, summed over every IO thread.
+     */
+    public void recordIo(long bytes, long nanos) {
+        bytesRead += bytes;
+        ioNanos += nanos;
+    }
+
+    /**
+     * Record a whole program scanner's {@link Scanner#finish()}.
+     *
+     * @param scanner The scanner.
+     * @param nanos   The time taken.
+     * @param results The results produced.
+     */
+    public void recordFinish(Scanner scanner, long nanos, Map<String, Map<String, List<ScanResult>>> results) {
+        finishNanos += nanos;
+        int id = scannerIds.getInt(scanner);
+        if (id == -1) return;
+
+        scannerNanos[id].add(nanos);
+        for (Map<String, List<ScanResult>> methods : results.values()) {
+            for (List<ScanResult> methodResults : methods.values()) {
+                scannerHits[id].add(methodResults.size());
+                for (ScanResult result : methodResults) {
+                    ruleHits.computeIfAbsent(ruleKey(result), e -> new LongAdder()).increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark the scan as finished, log a summary and emit a {@link ScannerSummaryEvent} per scanner.
+     */
+    public void finish() {
+        wallNanos = System.nanoTime() - startTime;
+        for (int id = 0; jfr && id < scanners.length; id++) {
+            ScannerSummaryEvent event = new ScannerSummaryEvent();
+            if (event.shouldCommit()) {
+                event.group = scannerGroups[id].name();
+                event.scanner = scanners[id].getClass().getSimpleName();
+                event.calls = scannerCalls[id].sum();
+                event.hits = scannerHits[id].sum();
+                event.nanos = scannerNanos[id].sum();
+                event.commit();
+            }
+        }
+
+        LOGGER.info("Metrics: {} classes, {} methods, {} instructions. IO {}ms, parse {}ms, scanners {}ms, whole program {}ms.",
+                classes.sum(),
+                methods.sum(),
+                instructions.sum(),
+                TimeUnit.NANOSECONDS.toMillis(ioNanos),
+                TimeUnit.NANOSECONDS.toMillis(getParseNanos()),
+                TimeUnit.NANOSECONDS.toMillis(scanNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(finishNanos)
+        );
+        for (ScanPlan.ScanGroup group : groups) {
+            LOGGER.info(" Group {}: {}ms, {} results", group.name(), TimeUnit.NANOSECONDS.toMillis(getGroupNanos(group)), getGroupHits(group));
+        }
+    }
+
+    /**
+     * Write the summary as JSON. Times are in milliseconds, summed over every thread.
+     *
+     * @param file The file to write to.
+     * @throws IOException If an IO error occurs.
+     */
+    public void write(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(IOUtils.makeParents(file));
+             JsonWriter json = new JsonWriter(writer)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("wall_ms").value(millis(wallNanos));
+            json.name("classes").value(classes.sum());
+            json.name("cached_classes").value(cachedClasses.sum());
+            json.name("skipped_classes").value(skippedClasses.sum());
+            json.name("methods").value(methods.sum());
+            json.name("instructions").value(instructions.sum());
+            json.name("bytes_read").value(bytesRead);
+            json.name("io_ms").value(millis(ioNanos));
+            json.name("parse_ms").value(millis(getParseNanos()));
+            json.name("scan_ms").value(millis(scanNanos.sum()));
+            json.name("whole_program_ms").value(millis(finishNanos));
+
+            json.name("groups").beginObject();
+            for (ScanPlan.ScanGroup group : groups) {
+                json.name(group.name()).beginObject();
+                json.name("time_ms").value(millis(getGroupNanos(group)));
+                json.name("results").value(getGroupHits(group));
+                json.endObject();
+            }
+            json.endObject();
+
+            json.name("scanners").beginArray();
+            for (int id = 0; id < scanners.length; id++) {
+                json.beginObject();
+                json.name("group").value(scannerGroups[id].name());
+                json.name("scanner").value(scanners[id].getClass().getSimpleName());
+                json.name("time_ms").value(millis(scannerNanos[id].sum()));
+                json.name("calls").value(scannerCalls[id].sum());
+                json.name("results").value(scannerHits[id].sum());
+                json.endObject();
+            }
+            json.endArray();
+
+            json.name("rules").beginObject();
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(ruleHits).entrySet()) {
+                json.name(entry.getKey()).value(entry.getValue().sum());
+            }
+            json.endObject();
+
+            json.name("slowest_classes").beginArray();
+            for (SlowClass slow : getSlowestClasses()) {
+                json.beginObject();
+                json.name("class").value(slow.name());
+                json.name("time_ms").value(millis(slow.nanos()));
+                json.name("bytes").value(slow.bytes());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    private long getParseNanos() {
+        return classNanos.sum() - scanNanos.sum();
+    }
+
+    private long getGroupNanos(ScanPlan.ScanGroup group) {
+        long nanos = 0;
+        for (int id = 0; id < scanners.length; id++) {
+            if (scannerGroups[id] == group) {
+                nanos += scannerNanos[id].sum();
+            }
+        }
+        return nanos;
+    }
+
+    private long getGroupHits(ScanPlan.ScanGroup group) {
+        long hits = 0;
+        for (int id = 0; id < scanners.length; id++) {
+            if (scannerGroups[id] == group) {
+                hits += scannerHits[id].sum();
+            }
+        }
+        return hits;
+    }
+
+    private synchronized List<SlowClass> getSlowestClasses() {
+        List<SlowClass> list = new ArrayList<>(slowest);
+        list.sort(Comparator.comparingLong(SlowClass::nanos).reversed());
+        return list;
+    }
+
+    private void recordSlowClass(String name, long nanos, int bytes) {
+        if (nanos <= slowThreshold) return;
+
+        synchronized (this) {
+            slowest.add(new SlowClass(name, nanos, bytes));
+            if (slowest.size() > SLOWEST_CLASSES) {
+                slowest.poll();
+                slowThreshold = slowest.peek().nanos();
+            }
+        }
+    }
+
+    // Rules are constant text, the member distinguishes between entries of the same scanner.
+    private static String ruleKey(ScanResult result) {
+        if (result.rule().isEmpty()) return OpcodeLookup.getName(result.opcode());
+        if (result.owner() == null) return result.rule();
+        if (result.name() == null) return result.rule() + " " + result.owner();
+        return result.rule() + " " + result.owner() + " " + result.name();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000D;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Records a single class. Not thread safe, a class is scanned by a single thread.
+     */
+    public final class Recorder {
+
+        private final long start = System.nanoTime();
+        @Nullable
+        private final ClassScanEvent event = jfr ? new ClassScanEvent() : null;
+        private final long[] nanos = new long[scanners.length];
+        private final int[] calls = new int[scanners.length];
+        private final int[] hits = new int[scanners.length];
+        @Nullable
+        private Object2IntMap<String> rules;
+        private int methods;
+        private int instructions;
+
+        private Recorder() {
+            if (event != null) {
+                event.begin();
+            }
+        }
+
+        @Nullable
+        public ScanResult scan(Scanner scanner, AbstractInsnNode insn, ScanContext ctx) {
+            long start = System.nanoTime();
+            ScanResult result = scanner.scan(insn, ctx);
+            record(scanner, System.nanoTime() - start, result);
+            return result;
+        }
+
+        @Nullable
+        public ScanResult scanDeclaration(Scanner scanner, Declaration decl, ScanContext ctx) {
+            long start = System.nanoTime();
+            ScanResult result = scanner.scanDeclaration(decl, ctx);
+            record(scanner, System.nanoTime() - start, result);
+            return result;
+        }
+
+        private void record(Scanner scanner, long elapsed, @Nullable ScanResult result) {
+            int id = scannerIds.getInt(scanner);
+            if (id == -1) return;
+
+            nanos[id] += elapsed;
+            calls[id]++;
+            if (result != null) {
+                hits[id]++;
+                if (rules == null) {
+                    rules = new Object2IntOpenHashMap<>();
+                }
+                rules.mergeInt(ruleKey(result), 1, Integer::sum);
+            }
+        }
+
+        /**
+         * Record a method which was walked.
+         *
+         * @param instructions The number of instructions in the method, excluding labels and line numbers.
+         */
+        public void method(int instructions) {
+            methods++;
+            this.instructions += instructions;
+        }
+
+        /**
+         * Finish recording, adding everything to the shared counters.
+         *
+         * @param className The name of the class.
+         * @param bytes     The size of the class file.
+         */
+        public void end(String className, int bytes) {
+            long elapsed = System.nanoTime() - start;
+            long scannerTime = 0;
+            int results = 0;
+            for (int id = 0; id < nanos.length; id++) {
+                if (calls[id] == 0) continue;
+
+                scannerTime += nanos[id];
+                results += hits[id];
+                scannerNanos[id].add(nanos[id]);
+                scannerCalls[id].add(calls[id]);
+                scannerHits[id].add(hits[id]);
+            }
+            if (rules != null) {
+                for (Object2IntMap.Entry<String> entry : rules.object2IntEntrySet()) {
+                    ruleHits.computeIfAbsent(entry.getKey(), e -> new LongAdder()).add(entry.getIntValue());
+                }
+            }
+            classes.increment();
+            ScanMetrics.this.methods.add(methods);
+            ScanMetrics.this.instructions.add(instructions);
+            classNanos.add(elapsed);
+            scanNanos.add(scannerTime);
+            recordSlowClass(className, elapsed, bytes);
+
+            if (event != null && event.shouldCommit()) {
+                event.className = className;
+                event.bytes = bytes;
+                event.methods = methods;
+                event.instructions = instructions;
+                event.results = results;
+                event.scannerNanos = scannerTime;
+                event.commit();
+            }
+        }
+    }
+
+    private record SlowClass(String name, long nanos, int bytes) {
+    }
+}
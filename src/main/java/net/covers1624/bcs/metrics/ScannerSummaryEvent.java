@@ -0,0 +1,29 @@
+package net.covers1624.bcs.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted once per scanner when a scan with metrics enabled finishes.
+ */
+@Name("net.covers1624.bcs.ScannerSummary")
+@Label("Scanner Summary")
+@Category("BadCodeScanner")
+@StackTrace(false)
+final class ScannerSummaryEvent extends Event {
+
+    @Label("Group")
+    String group;
+
+    @Label("Scanner")
+    String scanner;
+
+    @Label("Calls")
+    long calls;
+
+    @Label("Results")
+    long hits;
+
+    @Label("Time")
+    @Timespan
+    long nanos;
+}
@@ -0,0 +1,63 @@
+package net.covers1624.bcs.results;
+
+import com.google.gson.stream.JsonWriter;
+import net.covers1624.bcs.scanners.Scanner;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import net.covers1624.bcs.util.OpcodeLookup;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes each result as a single line JSON object.
+ * <p>
+ * Every line is self-contained, so a report may be sorted line by line.
+ */
+public class JsonLinesReportWriter implements ReportWriter {
+
+    private final Writer writer;
+
+    public JsonLinesReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeClass(String className, Map<String, List<ScanResult>> methodResults) throws IOException {
+        for (Map.Entry<String, List<ScanResult>> entry : new TreeMap<>(methodResults).entrySet()) {
+            for (ScanResult result : entry.getValue()) {
+                // Not closed, that would close the underlying writer.
+                JsonWriter json = new JsonWriter(writer);
+                json.beginObject();
+                json.name("class").value(className);
+                json.name("method").value(entry.getKey());
+                json.name("line").value(result.ctx().lineNumber());
+                json.name("index").value(result.ctx().insnIndex());
+                json.name("rule").value(ReportWriter.ruleId(result));
+                if (result.opcode() != Scanner.NO_OPCODE) {
+                    json.name("opcode").value(OpcodeLookup.getName(result.opcode()));
+                }
+                writeOptional(json, "owner", result.owner());
+                writeOptional(json, "name", result.name());
+                writeOptional(json, "desc", result.desc());
+                json.name("message").value(result.problem());
+                json.endObject();
+                writer.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static void writeOptional(JsonWriter json, String name, @Nullable String value) throws IOException {
+        if (value != null) {
+            json.name(name).value(value);
+        }
+    }
+}
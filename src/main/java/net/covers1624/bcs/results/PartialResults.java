@@ -0,0 +1,207 @@
+package net.covers1624.bcs.results;
+
+import com.google.common.hash.HashCode;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import net.covers1624.bcs.util.SymbolTable;
+import net.covers1624.quack.io.IOUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of a single shard of a scan, to be merged with the other shards.
+ * <p>
+ * Each class is stored with its index in the walk of the inputs, merging orders classes
+ * by index, reproducing the order a single process would report them in. Only classes
+ * with results are stored.
+ * <p>
+ * Files are written as classes finish. Strings are written inline the first time
+ * they are used, and referred to by id after that.
+ *
+ * @param configHash     The hash of the config the shard was scanned with.
+ * @param shardIndex     The index of the shard, starting from 1.
+ * @param shardCount     The total number of shards.
+ * @param entries        The classes with results, in index order.
+ * @param scannedClasses The number of classes scanned by the shard.
+ * @param cachedClasses  The number of those classes whose results came from the cache.
+ * @param skippedClasses The number of those classes skipped by the constant pool prefilter.
+ * @param complete       If the shard scanned every class, {@code false} if it was stopped early.
+ */
+public record PartialResults(HashCode configHash, int shardIndex, int shardCount, List<Entry> entries, long scannedClasses, long cachedClasses, long skippedClasses, boolean complete) {
+
+    private static final int MAGIC = 0x42435350; // BCSP
+    private static final int VERSION = 2;
+    private static final int NEW_STRING = -2;
+    private static final int CLASS = 1;
+    private static final int END = 0;
+
+    /**
+     * Start writing a partial result file.
+     *
+     * @param file       The file, replaced if it exists.
+     * @param configHash The hash of the config.
+     * @param shardIndex The index of the shard.
+     * @param shardCount The total number of shards.
+     * @return The writer.
+     * @throws IOException If an IO error occurs.
+     */
+    public static Writer open(Path file, HashCode configHash, int shardIndex, int shardCount) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(IOUtils.makeParents(file))));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(configHash.asBytes());
+        out.writeInt(shardIndex);
+        out.writeInt(shardCount);
+        return new Writer(out);
+    }
+
+    /**
+     * Read a partial result file.
+     *
+     * @param file The file.
+     * @return The results.
+     * @throws IOException If an IO error occurs, or the file is not a complete partial result file.
+     */
+    public static PartialResults read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Not a partial result file, or an unknown version: " + file);
+
+            byte[] hash = new byte[16];
+            in.readFully(hash);
+            int shardIndex = in.readInt();
+            int shardCount = in.readInt();
+
+            List<String> strings = new ArrayList<>();
+            List<Entry> entries = new ArrayList<>();
+            while (in.readByte() == CLASS) {
+                long index = in.readLong();
+                String className = readString(in, strings);
+                int methods = in.readInt();
+                Map<String, List<ScanResult>> results = new LinkedHashMap<>();
+                for (int i = 0; i < methods; i++) {
+                    String method = readString(in, strings);
+                    ScanResult[] methodResults = new ScanResult[in.readInt()];
+                    for (int j = 0; j < methodResults.length; j++) {
+                        Location loc = new Location(in.readInt(), in.readInt());
+                        int opcode = in.readShort();
+                        String rule = readString(in, strings);
+                        methodResults[j] = new ScanResult(loc, opcode, rule, readString(in, strings), readString(in, strings), readString(in, strings));
+                    }
+                    results.put(method, List.of(methodResults));
+                }
+                entries.add(new Entry(index, className, results));
+            }
+            return new PartialResults(HashCode.fromBytes(hash), shardIndex, shardCount, entries, in.readLong(), in.readLong(), in.readLong(), in.readBoolean());
+        } catch (EOFException ex) {
+            throw new IOException("Partial result file is incomplete, did the shard finish? " + file, ex);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInput in, List<String> strings) throws IOException {
+        int id = in.readInt();
+        if (id == SymbolTable.NULL) return null;
+        if (id != NEW_STRING) return strings.get(id);
+
+        String str = in.readUTF();
+        strings.add(str);
+        return str;
+    }
+
+    /**
+     * A class and its results.
+     *
+     * @param index     The index of the class in the walk of the inputs.
+     * @param className The class name, including its prefix.
+     * @param results   The results, keyed by method.
+     */
+    public record Entry(long index, String className, Map<String, List<ScanResult>> results) {
+    }
+
+    /**
+     * Writes a partial result file. Only ever called from a single thread.
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final SymbolTable symbols = new SymbolTable();
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Write the results of a class. Classes must be written in index order.
+         *
+         * @param index         The index of the class in the walk of the inputs.
+         * @param className     The class name, including its prefix.
+         * @param methodResults The results, keyed by method.
+         * @throws IOException If an IO error occurs.
+         */
+        public void writeClass(long index, String className, Map<String, List<ScanResult>> methodResults) throws IOException {
+            if (methodResults.isEmpty()) return;
+
+            out.writeByte(CLASS);
+            out.writeLong(index);
+            writeString(className);
+            out.writeInt(methodResults.size());
+            for (Map.Entry<String, List<ScanResult>> entry : methodResults.entrySet()) {
+                writeString(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (ScanResult result : entry.getValue()) {
+                    out.writeInt(result.ctx().lineNumber());
+                    out.writeInt(result.ctx().insnIndex());
+                    out.writeShort(result.opcode());
+                    writeString(result.rule());
+                    writeString(result.owner());
+                    writeString(result.name());
+                    writeString(result.desc());
+                }
+            }
+        }
+
+        /**
+         * Mark the file as complete. A file which is closed without finishing can't be read.
+         *
+         * @param scannedClasses The number of classes scanned.
+         * @param cachedClasses  The number of those classes whose results came from the cache.
+         * @param skippedClasses The number of those classes skipped by the constant pool prefilter.
+         * @param complete       If every class was scanned, {@code false} if the scan was stopped early.
+         * @throws IOException If an IO error occurs.
+         */
+        public void finish(long scannedClasses, long cachedClasses, long skippedClasses, boolean complete) throws IOException {
+            out.writeByte(END);
+            out.writeLong(scannedClasses);
+            out.writeLong(cachedClasses);
+            out.writeLong(skippedClasses);
+            out.writeBoolean(complete);
+        }
+
+        private void writeString(@Nullable String str) throws IOException {
+            if (str == null) {
+                out.writeInt(SymbolTable.NULL);
+                return;
+            }
+            int id = symbols.lookup(str);
+            if (id != SymbolTable.NULL) {
+                out.writeInt(id);
+                return;
+            }
+            symbols.intern(str);
+            out.writeInt(NEW_STRING);
+            out.writeUTF(str);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.covers1624.bcs.results;
+
+import net.covers1624.quack.io.IOUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The formats a report may be written in.
+ */
+public enum ReportFormat {
+    /**
+     * One JSON object per result, per line.
+     */
+    JSONL(JsonLinesReportWriter::new),
+    /**
+     * A SARIF 2.1.0 log.
+     */
+    SARIF(SarifReportWriter::new);
+
+    private final Factory factory;
+
+    ReportFormat(Factory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Open a new report, replacing the given file.
+     *
+     * @param file The file.
+     * @return The writer.
+     * @throws IOException If an IO error occurs.
+     */
+    public ReportWriter open(Path file) throws IOException {
+        Writer writer = Files.newBufferedWriter(IOUtils.makeParents(file), StandardCharsets.UTF_8);
+        try {
+            return factory.create(writer);
+        } catch (IOException ex) {
+            writer.close();
+            throw ex;
+        }
+    }
+
+    private interface Factory {
+
+        ReportWriter create(Writer writer) throws IOException;
+    }
+}
@@ -0,0 +1,54 @@
+package net.covers1624.bcs.results;
+
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import net.covers1624.bcs.util.OpcodeLookup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes results to a report as each class finishes scanning.
+ * <p>
+ * Writers are only called from a single thread and do not hold onto any results.
+ * Methods are written in sorted order, and every entry names the class and
+ * method it belongs to, so reports can be sorted and diffed.
+ */
+public interface ReportWriter extends Closeable {
+
+    /**
+     * Write the results of a single class.
+     *
+     * @param className     The class name.
+     * @param methodResults The results, keyed by method name and descriptor.
+     * @throws IOException If an IO error occurs.
+     */
+    void writeClass(String className, Map<String, List<ScanResult>> methodResults) throws IOException;
+
+    /**
+     * Finish the report.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * A stable identifier for the rule which produced a result.
+     * <p>
+     * Either the rule text as a slug, e.g {@code usage-of-method}, or the opcode
+     * name for results described by their opcode alone.
+     *
+     * @param result The result.
+     * @return The identifier.
+     */
+    static String ruleId(ScanResult result) {
+        if (result.rule().isEmpty()) return OpcodeLookup.getName(result.opcode());
+
+        return result.rule()
+                .replace(":", "")
+                .trim()
+                .replace(' ', '-');
+    }
+}
@@ -0,0 +1,346 @@
+package net.covers1624.bcs.results;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import net.covers1624.bcs.util.SymbolTable;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A compact store of scan results.
+ * <p>
+ * Every string is interned into a {@link SymbolTable}, and each result is
+ * stored as a row of ints across a set of columns. Results for a class are
+ * stored contiguously, in the order they were added. {@link ScanResult}s and
+ * their messages are only created again when requested.
+ * <p>
+ * Replacing or removing a class leaves its old rows dead. Once dead rows outnumber
+ * live ones, the live rows are moved down over them, so the store stays within
+ * twice the size of the results it holds.
+ * <p>
+ * Not thread safe, results are expected to be added from a single thread.
+ */
+public final class ResultStore {
+
+    // Small stores are not worth compacting.
+    private static final int MIN_COMPACT_ROWS = 1024;
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    // Per class.
+    private final Int2IntMap classSlots = new Int2IntOpenHashMap();
+    private final IntArrayList classNames = new IntArrayList();
+    private final IntArrayList classStarts = new IntArrayList();
+    private final IntArrayList classEnds = new IntArrayList();
+
+    // Per result.
+    private final IntArrayList methods = new IntArrayList();
+    private final IntArrayList opcodes = new IntArrayList();
+    private final IntArrayList rules = new IntArrayList();
+    private final IntArrayList owners = new IntArrayList();
+    private final IntArrayList names = new IntArrayList();
+    private final IntArrayList descs = new IntArrayList();
+    private final IntArrayList lines = new IntArrayList();
+    private final IntArrayList indices = new IntArrayList();
+    private final IntArrayList[] columns = { methods, opcodes, rules, owners, names, descs, lines, indices };
+
+    private int resultCount;
+
+    public ResultStore() {
+        classSlots.defaultReturnValue(-1);
+    }
+
+    /**
+     * Add the results for a class.
+     * <p>
+     * If the class already has results, they are replaced.
+     *
+     * @param className     The class name.
+     * @param methodResults The results, keyed by method name and descriptor.
+     */
+    public void add(String className, Map<String, List<ScanResult>> methodResults) {
+        if (methodResults.isEmpty()) return;
+
+        int nameId = symbols.intern(className);
+        int slot = classSlots.get(nameId);
+        if (slot == -1) {
+            slot = classNames.size();
+            classSlots.put(nameId, slot);
+            classNames.add(nameId);
+            classStarts.add(0);
+            classEnds.add(0);
+        } else {
+            // The old rows are left unreferenced.
+            resultCount -= getEnd(slot) - getStart(slot);
+        }
+
+        int start = methods.size();
+        for (Map.Entry<String, List<ScanResult>> entry : methodResults.entrySet()) {
+            int methodId = symbols.intern(entry.getKey());
+            for (ScanResult result : entry.getValue()) {
+                methods.add(methodId);
+                opcodes.add(result.opcode());
+                rules.add(symbols.intern(result.rule()));
+                owners.add(symbols.intern(result.owner()));
+                names.add(symbols.intern(result.name()));
+                descs.add(symbols.intern(result.desc()));
+                lines.add(result.ctx().lineNumber());
+                indices.add(result.ctx().insnIndex());
+            }
+        }
+        classStarts.set(slot, start);
+        classEnds.set(slot, methods.size());
+        resultCount += methods.size() - start;
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove the results of a class.
+     * <p>
+     * The last class takes the slot of the removed class.
+     *
+     * @param className The class name.
+     * @return If the class had any results.
+     */
+    public boolean remove(String className) {
+        int slot = findSlot(className);
+        if (slot == -1) return false;
+
+        resultCount -= getEnd(slot) - getStart(slot);
+        classSlots.remove(classNames.getInt(slot));
+        int last = classNames.size() - 1;
+        if (slot != last) {
+            classNames.set(slot, classNames.getInt(last));
+            classStarts.set(slot, classStarts.getInt(last));
+            classEnds.set(slot, classEnds.getInt(last));
+            classSlots.put(classNames.getInt(slot), slot);
+        }
+        classNames.removeInt(last);
+        classStarts.removeInt(last);
+        classEnds.removeInt(last);
+        // The rows are left unreferenced.
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Remove every result.
+     */
+    public void clear() {
+        symbols.clear();
+        classSlots.clear();
+        classNames.clear();
+        classStarts.clear();
+        classEnds.clear();
+        methods.clear();
+        opcodes.clear();
+        rules.clear();
+        owners.clear();
+        names.clear();
+        descs.clear();
+        lines.clear();
+        indices.clear();
+        resultCount = 0;
+    }
+
+    public boolean isEmpty() {
+        return classNames.isEmpty();
+    }
+
+    /**
+     * @return The number of classes with results.
+     */
+    public int getClassCount() {
+        return classNames.size();
+    }
+
+    /**
+     * @return The total number of results.
+     */
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * @param cls The class slot, between 0 and {@link #getClassCount()}.
+     * @return The name of the class.
+     */
+    public String getClassName(int cls) {
+        return symbols.get(classNames.getInt(cls));
+    }
+
+    /**
+     * @param cls The class slot.
+     * @return The first result row of the class.
+     */
+    public int getStart(int cls) {
+        return classStarts.getInt(cls);
+    }
+
+    /**
+     * @param cls The class slot.
+     * @return The result row after the last row of the class.
+     */
+    public int getEnd(int cls) {
+        return classEnds.getInt(cls);
+    }
+
+    /**
+     * Get the symbol id of the method a result was found in.
+     * <p>
+     * Consecutive rows with the same id belong to the same method.
+     *
+     * @param row The result row.
+     * @return The symbol id.
+     */
+    public int getMethodId(int row) {
+        return methods.getInt(row);
+    }
+
+    public String getMethod(int row) {
+        return symbols.get(methods.getInt(row));
+    }
+
+    public int getOpcode(int row) {
+        return opcodes.getInt(row);
+    }
+
+    public String getRule(int row) {
+        return symbols.get(rules.getInt(row));
+    }
+
+    public Location getLocation(int row) {
+        return new Location(lines.getInt(row), indices.getInt(row));
+    }
+
+    public ScanResult getResult(int row) {
+        return new ScanResult(
+                getLocation(row),
+                opcodes.getInt(row),
+                getRule(row),
+                symbols.get(owners.getInt(row)),
+                symbols.get(names.getInt(row)),
+                symbols.get(descs.getInt(row))
+        );
+    }
+
+    /**
+     * Render the message for a result.
+     *
+     * @param row The result row.
+     * @return The message.
+     */
+    public String getMessage(int row) {
+        return getResult(row).problem();
+    }
+
+    /**
+     * A read only view of this store, keyed by class name, then method.
+     * <p>
+     * Method maps are built each time they are requested.
+     *
+     * @return The view.
+     */
+    public Map<String, Map<String, List<ScanResult>>> asMap() {
+        return new ResultsView();
+    }
+
+    private void compactIfNeeded() {
+        int dead = methods.size() - resultCount;
+        if (dead < MIN_COMPACT_ROWS || dead <= resultCount) return;
+
+        // Move the rows of each class down, in the order they are stored, so
+        // a class is never moved over rows which have not been moved yet.
+        int[] slots = new int[classNames.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = i;
+        }
+        IntArrays.quickSort(slots, (a, b) -> Integer.compare(getStart(a), getStart(b)));
+
+        int write = 0;
+        for (int slot : slots) {
+            int start = getStart(slot);
+            int len = getEnd(slot) - start;
+            if (start != write) {
+                for (IntArrayList column : columns) {
+                    System.arraycopy(column.elements(), start, column.elements(), write, len);
+                }
+                classStarts.set(slot, write);
+                classEnds.set(slot, write + len);
+            }
+            write += len;
+        }
+        for (IntArrayList column : columns) {
+            column.size(write);
+        }
+    }
+
+    private Map<String, List<ScanResult>> getMethodResults(int cls) {
+        Map<String, List<ScanResult>> results = new LinkedHashMap<>();
+        int end = getEnd(cls);
+        for (int row = getStart(cls); row < end; row++) {
+            results.computeIfAbsent(getMethod(row), e -> new ArrayList<>()).add(getResult(row));
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    private int findSlot(@Nullable Object key) {
+        if (!(key instanceof String str)) return -1;
+        int id = symbols.lookup(str);
+        return id == SymbolTable.NULL ? -1 : classSlots.get(id);
+    }
+
+    private final class ResultsView extends AbstractMap<String, Map<String, List<ScanResult>>> {
+
+        @Override
+        public int size() {
+            return getClassCount();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return findSlot(key) != -1;
+        }
+
+        @Nullable
+        @Override
+        public Map<String, List<ScanResult>> get(Object key) {
+            int slot = findSlot(key);
+            return slot != -1 ? getMethodResults(slot) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Map<String, List<ScanResult>>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Map<String, List<ScanResult>>>> iterator() {
+                    return new Iterator<>() {
+                        private int cls;
+
+                        @Override
+                        public boolean hasNext() {
+                            return cls < getClassCount();
+                        }
+
+                        @Override
+                        public Entry<String, Map<String, List<ScanResult>>> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            int slot = cls++;
+                            return new SimpleImmutableEntry<>(getClassName(slot), getMethodResults(slot));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return getClassCount();
+                }
+            };
+        }
+    }
+}
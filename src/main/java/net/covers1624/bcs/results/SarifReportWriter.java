@@ -0,0 +1,101 @@
+package net.covers1624.bcs.results;
+
+import com.google.gson.stream.JsonWriter;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a SARIF 2.1.0 log containing a single run.
+ * <p>
+ * The header is written up front and each result is appended to the run's
+ * {@code results} array as it arrives, the log is only valid once closed.
+ */
+public class SarifReportWriter implements ReportWriter {
+
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    private static final String INFORMATION_URI = "https://github.com/covers1624/BadCodeScanner";
+
+    private final JsonWriter json;
+
+    public SarifReportWriter(Writer writer) throws IOException {
+        json = new JsonWriter(writer);
+        json.setIndent(" ");
+        json.beginObject();
+        json.name("$schema").value(SCHEMA);
+        json.name("version").value("2.1.0");
+        json.name("runs").beginArray();
+        json.beginObject();
+        json.name("tool").beginObject();
+        json.name("driver").beginObject();
+        json.name("name").value("BadCodeScanner");
+        json.name("informationUri").value(INFORMATION_URI);
+        json.endObject();
+        json.endObject();
+        json.name("results").beginArray();
+    }
+
+    @Override
+    public void writeClass(String className, Map<String, List<ScanResult>> methodResults) throws IOException {
+        for (Map.Entry<String, List<ScanResult>> entry : new TreeMap<>(methodResults).entrySet()) {
+            for (ScanResult result : entry.getValue()) {
+                writeResult(className, entry.getKey(), result);
+            }
+        }
+    }
+
+    private void writeResult(String className, String method, ScanResult result) throws IOException {
+        json.beginObject();
+        json.name("ruleId").value(ReportWriter.ruleId(result));
+        json.name("level").value("error");
+        json.name("message").beginObject();
+        json.name("text").value(result.problem());
+        json.endObject();
+
+        json.name("locations").beginArray();
+        json.beginObject();
+        json.name("physicalLocation").beginObject();
+        json.name("artifactLocation").beginObject();
+        json.name("uri").value(className + ".class");
+        json.endObject();
+        if (result.ctx().lineNumber() > 0) {
+            json.name("region").beginObject();
+            json.name("startLine").value(result.ctx().lineNumber());
+            json.endObject();
+        }
+        json.endObject();
+        json.name("logicalLocations").beginArray();
+        json.beginObject();
+        if (method.equals(ScanEngine.CLASS_KEY)) {
+            json.name("fullyQualifiedName").value(className);
+            json.name("kind").value("type");
+        } else {
+            json.name("fullyQualifiedName").value(className + "." + method);
+            // Methods are keyed by name and descriptor, fields by name:desc.
+            json.name("kind").value(method.indexOf('(') != -1 ? "function" : "member");
+        }
+        json.endObject();
+        json.endArray();
+        json.endObject();
+        json.endArray();
+
+        json.name("properties").beginObject();
+        json.name("insnIndex").value(result.ctx().insnIndex());
+        json.endObject();
+        json.endObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.endArray();
+        json.endObject();
+        json.endArray();
+        json.endObject();
+        json.close();
+    }
+}
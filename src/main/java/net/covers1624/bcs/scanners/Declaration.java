@@ -0,0 +1,53 @@
+package net.covers1624.bcs.scanners;
+
+/**
+ * A type referenced by the declaration of a class or one of its members,
+ * passed to {@link Scanner#scanDeclaration}.
+ *
+ * @param kind  The kind of declaration.
+ * @param value The referenced type, in the format given by {@link Kind#getFormat()}.
+ */
+public record Declaration(Kind kind, String value) {
+
+    public enum Kind {
+        SUPER_CLASS("super class", Format.INTERNAL_NAME),
+        INTERFACE("interface", Format.INTERNAL_NAME),
+        FIELD("field", Format.DESCRIPTOR),
+        METHOD("method descriptor", Format.DESCRIPTOR),
+        EXCEPTION("thrown exception", Format.INTERNAL_NAME),
+        TRY_CATCH("caught exception", Format.INTERNAL_NAME),
+        LOCAL_VARIABLE("local variable", Format.DESCRIPTOR),
+        SIGNATURE("generic signature", Format.SIGNATURE);
+
+        private final String description;
+        private final Format format;
+
+        Kind(String description, Format format) {
+            this.description = description;
+            this.format = format;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+    }
+
+    public enum Format {
+        /**
+         * An internal name, e.g {@code java/lang/String}.
+         */
+        INTERNAL_NAME,
+        /**
+         * A field or method descriptor.
+         */
+        DESCRIPTOR,
+        /**
+         * A generic signature of a class, method or type.
+         */
+        SIGNATURE,
+    }
+}
@@ -2,13 +2,15 @@ package net.covers1624.bcs.scanners;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.covers1624.bcs.util.ClassHierarchy;
+import net.covers1624.bcs.util.MemberIndex;
 import net.covers1624.quack.collection.StreamableIterable;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
-import org.objectweb.asm.tree.MethodNode;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Predicate;
 
@@ -17,28 +19,54 @@ import java.util.function.Predicate;
  */
 public class FieldUseScanner implements Scanner {
 
-    private final List<FieldPredicate> predicates;
+    private final MemberIndex index;
 
     public FieldUseScanner(List<FieldPredicate> predicates) {
-        this.predicates = List.copyOf(predicates);
+        index = buildIndex(predicates);
     }
 
     public FieldUseScanner(JsonElement jsonElement) {
         if (!jsonElement.isJsonArray()) throw new JsonParseException("Expected Json array.");
 
-        predicates = StreamableIterable.of(jsonElement.getAsJsonArray())
+        index = buildIndex(StreamableIterable.of(jsonElement.getAsJsonArray())
                 .filterNot(JsonElement::isJsonNull)
                 .map(e -> e.getAsJsonPrimitive().getAsString())
                 .map(FieldUseScanner::parsePredicate)
-                .toImmutableList();
+        );
+    }
+
+    @Override
+    public Collection<String> getConstantPoolPrefixes() {
+        return index.getOwners();
+    }
+
+    @Override
+    public void setHierarchy(ClassHierarchy hierarchy) {
+        index.setHierarchy(hierarchy);
+    }
+
+    @Override
+    public IntSet getOpcodes() {
+        return FIELD_INSNS;
     }
 
     @Nullable
     @Override
-    public ScanResult scan(AbstractInsnNode insn, MethodNode mNode, ClassNode cNode) {
-        if (Scanner.noneMatch(predicates, insn)) return null;
+    public ScanResult scan(AbstractInsnNode insn, ScanContext ctx) {
+        if (insn.getType() != AbstractInsnNode.FIELD_INSN) return null;
+
+        FieldInsnNode fInsn = (FieldInsnNode) insn;
+        if (!index.matches(fInsn.owner, fInsn.name, fInsn.desc)) return null;
 
-        return Scanner.simpleResult(insn, mNode, "usage of field: " + Scanner.describeSimple(insn));
+        return Scanner.memberResult(insn, ctx, "usage of field:");
+    }
+
+    private static MemberIndex buildIndex(Iterable<FieldPredicate> predicates) {
+        MemberIndex index = new MemberIndex();
+        for (FieldPredicate predicate : predicates) {
+            index.add(predicate.owner(), predicate.name(), null);
+        }
+        return index;
     }
 
     private static FieldPredicate parsePredicate(String s) {
@@ -1,15 +1,16 @@
 package net.covers1624.bcs.scanners;
 
-import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.covers1624.bcs.util.ClassHierarchy;
+import net.covers1624.bcs.util.MemberIndex;
 import net.covers1624.quack.collection.StreamableIterable;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodInsnNode;
-import org.objectweb.asm.tree.MethodNode;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Predicate;
 
@@ -18,30 +19,56 @@ import java.util.function.Predicate;
  */
 public class MethodUseScanner implements Scanner {
 
-    private final List<MethodPredicate> predicates;
+    private final MemberIndex index;
 
     public MethodUseScanner(List<MethodPredicate> predicates) {
-        this.predicates = List.copyOf(predicates);
+        index = buildIndex(predicates);
     }
 
     public MethodUseScanner(JsonElement jsonElement) {
         if (!jsonElement.isJsonArray()) throw new JsonParseException("Expected Json array.");
 
-        predicates = StreamableIterable.of(jsonElement.getAsJsonArray())
+        index = buildIndex(StreamableIterable.of(jsonElement.getAsJsonArray())
                 .filterNot(JsonElement::isJsonNull)
                 .map(e -> e.getAsJsonPrimitive().getAsString())
                 .map(MethodUseScanner::parsePredicate)
-                .toImmutableList();
+        );
     }
 
     @Override
-    public ScanResult scan(AbstractInsnNode insn, MethodNode mNode, ClassNode cNode) {
-        if (Scanner.noneMatch(predicates, insn)) return null;
+    public Collection<String> getConstantPoolPrefixes() {
+        return index.getOwners();
+    }
+
+    @Override
+    public void setHierarchy(ClassHierarchy hierarchy) {
+        index.setHierarchy(hierarchy);
+    }
+
+    @Override
+    public IntSet getOpcodes() {
+        return METHOD_INSNS;
+    }
 
-        return Scanner.simpleResult(insn, mNode, "usage of method: " + Scanner.describeSimple(insn));
+    @Override
+    public ScanResult scan(AbstractInsnNode insn, ScanContext ctx) {
+        if (insn.getType() != AbstractInsnNode.METHOD_INSN) return null;
+
+        MethodInsnNode mInsn = (MethodInsnNode) insn;
+        if (!index.matches(mInsn.owner, mInsn.name, mInsn.desc)) return null;
+
+        return Scanner.memberResult(insn, ctx, "usage of method:");
+    }
+
+    private static MemberIndex buildIndex(Iterable<MethodPredicate> predicates) {
+        MemberIndex index = new MemberIndex();
+        for (MethodPredicate predicate : predicates) {
+            index.add(predicate.owner(), predicate.name(), predicate.desc());
+        }
+        return index;
     }
 
-    private static MethodPredicate parsePredicate(String s) {
+    static MethodPredicate parsePredicate(String s) {
         String[] segs = s.split(" ");
         if (segs.length != 2) throw new JsonParseException("Expected 2 segments. Got: '" + s + "'");
 
@@ -2,14 +2,13 @@ package net.covers1624.bcs.scanners;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import it.unimi.dsi.fastutil.ints.IntArraySet;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
 import net.covers1624.bcs.util.OpcodeLookup;
 import net.covers1624.quack.collection.StreamableIterable;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import java.util.Collection;
 
@@ -21,25 +20,30 @@ public class OpcodeUseScanner implements Scanner {
     private final IntSet opcodes;
 
     public OpcodeUseScanner(Collection<Integer> opcodes) {
-        this.opcodes = new IntArraySet(opcodes);
+        this.opcodes = IntSets.unmodifiable(new IntOpenHashSet(opcodes));
     }
 
     public OpcodeUseScanner(JsonElement jsonElement) {
         if (!jsonElement.isJsonArray()) throw new JsonParseException("Expected Json array.");
 
-        opcodes = new IntArraySet(StreamableIterable.of(jsonElement.getAsJsonArray())
+        opcodes = IntSets.unmodifiable(new IntOpenHashSet(StreamableIterable.of(jsonElement.getAsJsonArray())
                 .filterNot(JsonElement::isJsonNull)
                 .map(e -> e.getAsJsonPrimitive().getAsString())
                 .map(OpcodeLookup::lookupOpcode)
                 .toList()
-        );
+        ));
+    }
+
+    @Override
+    public IntSet getOpcodes() {
+        return opcodes;
     }
 
     @Nullable
     @Override
-    public ScanResult scan(AbstractInsnNode insn, MethodNode mNode, ClassNode cNode) {
+    public ScanResult scan(AbstractInsnNode insn, ScanContext ctx) {
         if (!opcodes.contains(insn.getOpcode())) return null;
 
-        return Scanner.simpleResult(insn, mNode, "");
+        return Scanner.simpleResult(insn, ctx);
     }
 }
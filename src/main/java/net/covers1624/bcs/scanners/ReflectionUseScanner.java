@@ -0,0 +1,290 @@
+package net.covers1624.bcs.scanners;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.covers1624.bcs.util.ClassHierarchy;
+import net.covers1624.bcs.util.MemberIndex;
+import net.covers1624.quack.collection.StreamableIterable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Matches members looked up reflectively, e.g {@code Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe")}.
+ * <p>
+ * Members are configured in the same format as {@code field_use}, {@code owner name}, where
+ * the name may be {@code *}. Either as an array, or as an object with a {@code members} array
+ * and optionally {@code max_instructions} and {@code timeout_ms} limits.
+ * <p>
+ * Scanning is tiered. Every method instruction is first checked against the known reflective
+ * lookups ({@link Class}, {@link ClassLoader} and {@code MethodHandles.Lookup}), which is cheap.
+ * Only methods containing one are analyzed with a {@link SourceInterpreter}, tracing the constants
+ * which flow into the lookup's class and name arguments. Methods larger than the instruction
+ * limit, or which take longer than the timeout to analyze, are skipped.
+ */
+public class ReflectionUseScanner implements Scanner {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int DEFAULT_MAX_INSTRUCTIONS = 20000;
+    private static final long DEFAULT_TIMEOUT_MS = 250;
+
+    // How far a constant will be traced back through loads, stores and casts.
+    private static final int MAX_TRACE_DEPTH = 8;
+
+    private static final String CLASS = "java/lang/Class";
+    private static final String CLASS_LOADER = "java/lang/ClassLoader";
+    private static final String LOOKUP = "java/lang/invoke/MethodHandles$Lookup";
+
+    private static final Map<String, Map<String, ReflectiveLookup>> LOOKUPS = new HashMap<>();
+
+    static {
+        addLookup(CLASS, false, ReflectiveLookup.RECEIVER, 0, "getMethod", "getDeclaredMethod");
+        addLookup(CLASS, false, ReflectiveLookup.RECEIVER, ReflectiveLookup.CONSTRUCTOR, "getConstructor", "getDeclaredConstructor");
+        addLookup(CLASS, true, ReflectiveLookup.RECEIVER, 0, "getField", "getDeclaredField");
+        addLookup(LOOKUP, false, 0, 1, "findVirtual", "findStatic", "findSpecial");
+        addLookup(LOOKUP, false, 0, ReflectiveLookup.CONSTRUCTOR, "findConstructor");
+        addLookup(LOOKUP, true, 0, 1, "findGetter", "findSetter", "findStaticGetter", "findStaticSetter", "findVarHandle", "findStaticVarHandle");
+    }
+
+    private final MemberIndex index;
+    private final int maxInstructions;
+    private final long timeoutNanos;
+
+    public ReflectionUseScanner(JsonElement jsonElement) {
+        JsonElement members = jsonElement;
+        int maxInstructions = DEFAULT_MAX_INSTRUCTIONS;
+        long timeoutMs = DEFAULT_TIMEOUT_MS;
+        if (jsonElement.isJsonObject()) {
+            JsonObject obj = jsonElement.getAsJsonObject();
+            if (!obj.has("members")) throw new JsonParseException("Expected 'members' array.");
+
+            members = obj.get("members");
+            if (obj.has("max_instructions")) {
+                maxInstructions = obj.get("max_instructions").getAsInt();
+            }
+            if (obj.has("timeout_ms")) {
+                timeoutMs = obj.get("timeout_ms").getAsLong();
+            }
+        }
+        if (!members.isJsonArray()) throw new JsonParseException("Expected Json array.");
+
+        index = new MemberIndex();
+        StreamableIterable.of(members.getAsJsonArray())
+                .filterNot(JsonElement::isJsonNull)
+                .map(e -> e.getAsJsonPrimitive().getAsString())
+                .forEach(this::addMember);
+        this.maxInstructions = maxInstructions;
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    private void addMember(String s) {
+        String[] segs = s.split(" ");
+        if (segs.length != 2) throw new JsonParseException("Expected 2 segments. Got: '" + s + "'");
+        if (segs[1].indexOf('(') != -1) throw new JsonParseException("Descriptors can't be matched reflectively. Got: '" + s + "'");
+
+        index.add(segs[0].replace('.', '/'), segs[1], null);
+    }
+
+    @Override
+    public Collection<String> getConstantPoolPrefixes() {
+        // Every reflective lookup references one of these, java/lang/Class also covers java/lang/ClassLoader.
+        return List.of(CLASS, LOOKUP);
+    }
+
+    @Override
+    public void setHierarchy(ClassHierarchy hierarchy) {
+        index.setHierarchy(hierarchy);
+    }
+
+    @Override
+    public IntSet getOpcodes() {
+        return METHOD_INSNS;
+    }
+
+    @Nullable
+    @Override
+    public ScanResult scan(AbstractInsnNode insn, ScanContext ctx) {
+        if (insn.getType() != AbstractInsnNode.METHOD_INSN) return null;
+
+        MethodInsnNode mInsn = (MethodInsnNode) insn;
+        Map<String, ReflectiveLookup> lookups = LOOKUPS.get(mInsn.owner);
+        if (lookups == null) return null;
+
+        ReflectiveLookup lookup = lookups.get(mInsn.name);
+        if (lookup == null) return null;
+
+        // Only now is the method worth analyzing.
+        // Scanners are shared between scan threads, the analysis lives with the method being scanned.
+        MethodNode method = ctx.getMethodNode();
+        Frame<SourceValue>[] frames = ctx.getMethodData(this, () -> analyze(ctx, method)).frames();
+        if (frames == null) return null;
+
+        int insnIndex = ctx.getLocation().insnIndex();
+        Frame<SourceValue> frame = frames[insnIndex];
+        if (frame == null) return null; // Unreachable.
+
+        int args = Type.getArgumentTypes(mInsn.desc).length;
+        Set<Object> owners = resolve(frames, method, argument(frame, args, lookup.ownerArg()));
+        if (owners.isEmpty()) return null;
+
+        Set<Object> names = lookup.nameArg() == ReflectiveLookup.CONSTRUCTOR
+                ? Set.of("<init>")
+                : resolve(frames, method, argument(frame, args, lookup.nameArg()));
+        for (Object owner : owners) {
+            if (!(owner instanceof Type type) || type.getSort() != Type.OBJECT) continue;
+
+            for (Object name : names) {
+                if (name instanceof String str && index.matches(type.getInternalName(), str, "")) {
+                    String rule = lookup.field() ? "reflective usage of field:" : "reflective usage of method:";
+                    return new ScanResult(ctx.getLocation(), insn.getOpcode(), rule, type.getInternalName(), str, null);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Analysis analyze(ScanContext ctx, MethodNode method) {
+        Frame<SourceValue>[] frames = null;
+        if (method.instructions.size() > maxInstructions) {
+            LOGGER.warn("Skipping reflection analysis of {}.{}{}, {} instructions exceeds the limit of {}.",
+                    ctx.getClassName(), ctx.getMethodName(), ctx.getMethodDesc(), method.instructions.size(), maxInstructions);
+        } else {
+            try {
+                frames = new TimedAnalyzer(System.nanoTime() + timeoutNanos).analyze(ctx.getClassName(), method);
+            } catch (AnalyzerException ex) {
+                if (ex.getCause() instanceof AnalysisTimeout) {
+                    LOGGER.warn("Skipping reflection analysis of {}.{}{}, took longer than {}ms.",
+                            ctx.getClassName(), ctx.getMethodName(), ctx.getMethodDesc(), TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+                } else {
+                    LOGGER.debug("Failed to analyze {}.{}{}.", ctx.getClassName(), ctx.getMethodName(), ctx.getMethodDesc(), ex);
+                }
+            }
+        }
+        return new Analysis(frames);
+    }
+
+    /**
+     * Trace a value back to the constants it may have been produced from.
+     *
+     * @return The {@link String} and {@link Type} constants. Sources which can't be
+     * traced to a constant are ignored.
+     */
+    private static Set<Object> resolve(Frame<SourceValue>[] frames, MethodNode method, SourceValue value) {
+        Set<Object> constants = new HashSet<>();
+        resolve(frames, method, value, 0, constants);
+        return constants;
+    }
+
+    private static void resolve(Frame<SourceValue>[] frames, MethodNode method, SourceValue value, int depth, Set<Object> constants) {
+        if (depth > MAX_TRACE_DEPTH) return;
+
+        for (AbstractInsnNode source : value.insns) {
+            if (source instanceof LdcInsnNode ldc) {
+                constants.add(ldc.cst);
+                continue;
+            }
+
+            Frame<SourceValue> frame = frames[method.instructions.indexOf(source)];
+            if (frame == null) continue;
+
+            switch (source.getOpcode()) {
+                case ALOAD -> resolve(frames, method, frame.getLocal(((VarInsnNode) source).var), depth + 1, constants);
+                case ASTORE, DUP, CHECKCAST -> resolve(frames, method, frame.getStack(frame.getStackSize() - 1), depth + 1, constants);
+                case INVOKESTATIC, INVOKEVIRTUAL -> {
+                    // Class.forName(String, ...) and ClassLoader.loadClass(String, ...)
+                    MethodInsnNode mInsn = (MethodInsnNode) source;
+                    boolean forName = mInsn.owner.equals(CLASS) && mInsn.name.equals("forName");
+                    boolean loadClass = mInsn.owner.equals(CLASS_LOADER) && mInsn.name.equals("loadClass");
+                    if (!forName && !loadClass) continue;
+
+                    Set<Object> classNames = new HashSet<>();
+                    int args = Type.getArgumentTypes(mInsn.desc).length;
+                    resolve(frames, method, argument(frame, args, 0), depth + 1, classNames);
+                    for (Object className : classNames) {
+                        if (className instanceof String str) {
+                            constants.add(Type.getObjectType(str.replace('.', '/')));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static SourceValue argument(Frame<SourceValue> frame, int args, int arg) {
+        // The receiver sits below the arguments.
+        int fromTop = arg == ReflectiveLookup.RECEIVER ? args : args - 1 - arg;
+        return frame.getStack(frame.getStackSize() - 1 - fromTop);
+    }
+
+    private static void addLookup(String owner, boolean field, int ownerArg, int nameArg, String... names) {
+        Map<String, ReflectiveLookup> lookups = LOOKUPS.computeIfAbsent(owner, e -> new HashMap<>());
+        for (String name : names) {
+            lookups.put(name, new ReflectiveLookup(field, ownerArg, nameArg));
+        }
+    }
+
+    /**
+     * A reflective lookup method.
+     *
+     * @param field    If the lookup is for a field, otherwise a method.
+     * @param ownerArg The argument holding the class being looked up, or {@link #RECEIVER}.
+     * @param nameArg  The argument holding the member name, or {@link #CONSTRUCTOR}.
+     */
+    private record ReflectiveLookup(boolean field, int ownerArg, int nameArg) {
+
+        public static final int RECEIVER = -1;
+        public static final int CONSTRUCTOR = -1;
+    }
+
+    // Also holds a failed analysis, so it isn't attempted again for every lookup in the method.
+    private record Analysis(@Nullable Frame<SourceValue>[] frames) {
+    }
+
+    private static class TimedAnalyzer extends Analyzer<SourceValue> {
+
+        private final long deadline;
+        private int edges;
+
+        public TimedAnalyzer(long deadline) {
+            super(new SourceInterpreter());
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void newControlFlowEdge(int insnIndex, int successorIndex) {
+            // Called for every instruction visited, checking the clock every time would dominate.
+            if ((++edges & 0xFF) == 0 && System.nanoTime() > deadline) {
+                throw new AnalysisTimeout();
+            }
+        }
+    }
+
+    private static class AnalysisTimeout extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public AnalysisTimeout() {
+            super("Analysis timed out.", null, false, false);
+        }
+    }
+}
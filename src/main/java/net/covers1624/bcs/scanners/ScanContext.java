@@ -0,0 +1,76 @@
+package net.covers1624.bcs.scanners;
+
+import net.covers1624.bcs.scanners.Scanner.Location;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.function.Supplier;
+
+/**
+ * Describes where the instruction currently being passed to a {@link Scanner} lives.
+ * <p>
+ * Implementations are provided by the scan engine and are only valid for the
+ * duration of the {@link Scanner#scan} call they are passed to.
+ */
+public interface ScanContext {
+
+    /**
+     * @return The internal name of the class being scanned.
+     */
+    String getClassName();
+
+    /**
+     * @return The access flags of the class being scanned.
+     */
+    int getClassAccess();
+
+    /**
+     * @return The name of the method being scanned.
+     */
+    String getMethodName();
+
+    /**
+     * @return The descriptor of the method being scanned.
+     */
+    String getMethodDesc();
+
+    /**
+     * @return The access flags of the method being scanned. For declarations,
+     * those of the field or class being declared.
+     */
+    int getMethodAccess();
+
+    /**
+     * The location of the current instruction.
+     * <p>
+     * Engines track the location as they walk each method, this is constant time.
+     *
+     * @return The location.
+     */
+    Location getLocation();
+
+    /**
+     * The whole method being scanned, for scanners which need more than the current
+     * instruction. The current instruction is at {@link Location#insnIndex()}.
+     * <p>
+     * Engines which don't build a tree read the method again on first call, scanners
+     * should only call this once cheaper checks have passed.
+     *
+     * @return The method.
+     * @throws UnsupportedOperationException When scanning declarations.
+     */
+    MethodNode getMethodNode();
+
+    /**
+     * Data computed from the method being scanned, kept for the rest of the method.
+     * <p>
+     * Scanners which derive something expensive from {@link #getMethodNode()} store it
+     * here rather than in their own state, it is dropped by the engine once the method
+     * has been scanned.
+     *
+     * @param key     The key, usually the scanner itself.
+     * @param factory Computes the data on first call for the method.
+     * @return The data.
+     * @throws UnsupportedOperationException When scanning declarations.
+     */
+    <T> T getMethodData(Object key, Supplier<T> factory);
+}
@@ -1,19 +1,142 @@
 package net.covers1624.bcs.scanners;
 
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import net.covers1624.bcs.util.ClassHierarchy;
 import net.covers1624.bcs.util.OpcodeLookup;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.*;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 
+import static org.objectweb.asm.Opcodes.*;
+
 /**
  * Created by covers1624 on 13/6/22.
  */
 public interface Scanner {
 
+    /**
+     * The opcode of results which were not produced by an instruction.
+     */
+    int NO_OPCODE = -1;
+
+    IntSet ALL_OPCODES = IntSets.fromTo(0, 256);
+    IntSet METHOD_INSNS = opcodes(INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE);
+    IntSet FIELD_INSNS = opcodes(GETSTATIC, PUTSTATIC, GETFIELD, PUTFIELD);
+    IntSet TYPE_INSNS = opcodes(NEW, ANEWARRAY, CHECKCAST, INSTANCEOF);
+
+    @Nullable
+    ScanResult scan(AbstractInsnNode insn, ScanContext ctx);
+
+    /**
+     * Scan a type referenced by the declaration of a class, field or method, or
+     * by a method's exception table or local variables.
+     * <p>
+     * Only called if {@link #scansDeclarations()} returns {@code true}. Each declaration
+     * is passed once, as the engine walks the class, alongside its instructions.
+     * {@link ScanContext#getMethodName()} is the name of the member being declared,
+     * or {@code <class>} for the class itself.
+     *
+     * @param decl The declaration.
+     * @param ctx  The context.
+     * @return The result, or {@code null}.
+     */
     @Nullable
-    ScanResult scan(AbstractInsnNode insn, MethodNode mNode, ClassNode cNode);
+    default ScanResult scanDeclaration(Declaration decl, ScanContext ctx) {
+        return null;
+    }
+
+    /**
+     * If this scanner wants {@link #scanDeclaration} to be called.
+     * <p>
+     * This is queried once when the scanner is registered.
+     *
+     * @return If declarations should be scanned.
+     */
+    default boolean scansDeclarations() {
+        return false;
+    }
+
+    /**
+     * The opcodes this scanner is interested in.
+     * <p>
+     * Instructions with any other opcode, as well as pseudo instructions
+     * (labels, line numbers, frames), are never passed to {@link #scan}.
+     * <p>
+     * This is queried once when the scanner is registered.
+     *
+     * @return The opcodes.
+     */
+    default IntSet getOpcodes() {
+        return ALL_OPCODES;
+    }
+
+    /**
+     * Strings which must be present in a class's constant pool for this
+     * scanner to produce any result for that class.
+     * <p>
+     * Each string is matched as a prefix of every {@code CONSTANT_Utf8}
+     * entry, and of the text following every {@code L} in those entries.
+     * Internal names of owners and types are therefore suitable.
+     * <p>
+     * This is queried once when the scanner is registered.
+     *
+     * @return The prefixes, or {@code null} if this scanner may match any class.
+     */
+    @Nullable
+    default Collection<String> getConstantPoolPrefixes() {
+        return null;
+    }
+
+    /**
+     * If this scanner needs to see every class before it can produce its results.
+     * <p>
+     * Whole program scanners produce their results from {@link #finish()}. Whilst one is
+     * configured, the constant pool prefilter and the scan cache are disabled.
+     * <p>
+     * This is queried once when the scanner is registered.
+     *
+     * @return If this is a whole program scanner.
+     */
+    default boolean isWholeProgram() {
+        return false;
+    }
+
+    /**
+     * Called before every class is scanned. Whole program scanners should discard
+     * anything collected by a previous scan.
+     */
+    default void begin() {
+    }
+
+    /**
+     * Called once every class has been scanned, from a single thread.
+     *
+     * @return Results keyed by internal class name, then method.
+     */
+    default Map<String, Map<String, List<ScanResult>>> finish() {
+        return Map.of();
+    }
+
+    /**
+     * Provide the hierarchy of every scanned and library class, so rules may
+     * match through the supertypes of an owner.
+     * <p>
+     * Only called when inherited matching is enabled, before each scan, from a single thread.
+     *
+     * @param hierarchy The hierarchy.
+     */
+    default void setHierarchy(ClassHierarchy hierarchy) {
+    }
+
+    static IntSet opcodes(int... opcodes) {
+        return IntSets.unmodifiable(new IntOpenHashSet(opcodes));
+    }
 
     static boolean noneMatch(List<? extends Predicate<AbstractInsnNode>> predicates, AbstractInsnNode node) {
         for (Predicate<AbstractInsnNode> predicate : predicates) {
@@ -24,39 +147,97 @@ public interface Scanner {
         return true;
     }
 
-    static Location getLoc(MethodNode mNode, AbstractInsnNode insn) {
-        AbstractInsnNode ln = insn;
-        while (ln != null && ln.getType() != AbstractInsnNode.LINE) {
-            ln = ln.getPrevious();
-        }
-
-        return new Location(ln != null ? ((LineNumberNode) ln).line : -1, mNode.instructions.indexOf(insn));
+    /**
+     * A result which is described by its opcode alone.
+     *
+     * @param insn The instruction.
+     * @param ctx  The context.
+     * @return The result.
+     */
+    static ScanResult simpleResult(AbstractInsnNode insn, ScanContext ctx) {
+        return new ScanResult(ctx.getLocation(), insn.getOpcode(), "", null, null, null);
     }
 
-    static ScanResult simpleResult(AbstractInsnNode insn, MethodNode mNode, String message) {
-        String tail = !message.isEmpty() ? " " + message : "";
-        return new ScanResult(getLoc(mNode, insn), OpcodeLookup.getName(insn.getOpcode()) + tail);
-    }
-
-    static String describeSimple(AbstractInsnNode insn) {
+    /**
+     * A result describing the member referenced by a method or field instruction.
+     *
+     * @param insn The instruction.
+     * @param ctx  The context.
+     * @param rule The constant text describing the rule, e.g {@code usage of method:}.
+     * @return The result.
+     */
+    static ScanResult memberResult(AbstractInsnNode insn, ScanContext ctx, String rule) {
         if (insn.getType() == AbstractInsnNode.METHOD_INSN) {
             MethodInsnNode mInsn = (MethodInsnNode) insn;
-            return mInsn.owner + " " + mInsn.name + mInsn.desc;
+            return new ScanResult(ctx.getLocation(), insn.getOpcode(), rule, mInsn.owner, mInsn.name, mInsn.desc);
         }
         if (insn.getType() == AbstractInsnNode.FIELD_INSN) {
             FieldInsnNode fInsn = (FieldInsnNode) insn;
-            return fInsn.owner + " " + fInsn.name + " : " + fInsn.desc;
+            return new ScanResult(ctx.getLocation(), insn.getOpcode(), rule, fInsn.owner, fInsn.name, fInsn.desc);
         }
-        return "Unknown Instruction";
+        return new ScanResult(ctx.getLocation(), insn.getOpcode(), rule, "Unknown Instruction", null, null);
+    }
+
+    /**
+     * A result describing a declaration.
+     *
+     * @param decl The declaration.
+     * @param ctx  The context.
+     * @param rule The constant text describing the rule.
+     * @return The result.
+     */
+    static ScanResult declarationResult(Declaration decl, ScanContext ctx, String rule) {
+        return new ScanResult(ctx.getLocation(), NO_OPCODE, rule, decl.value(), null, null);
     }
 
-    record ScanResult(Location ctx, String problem) {
+    /**
+     * A single result.
+     * <p>
+     * Results only hold references to strings which already exist, the
+     * message is only built when {@link #problem()} is called.
+     *
+     * @param ctx    The location of the instruction.
+     * @param opcode The opcode of the instruction, or {@link #NO_OPCODE} for declarations.
+     * @param rule   The constant text describing the rule which matched, may be empty.
+     * @param owner  The owner of the referenced member, if any.
+     * @param name   The name of the referenced member, if any.
+     * @param desc   The descriptor of the referenced member, if any.
+     */
+    record ScanResult(Location ctx, int opcode, String rule, @Nullable String owner, @Nullable String name, @Nullable String desc) {
+
+        /**
+         * @return The human readable description of this result.
+         */
+        public String problem() {
+            StringBuilder sb = new StringBuilder();
+            if (opcode != NO_OPCODE) {
+                sb.append(OpcodeLookup.getName(opcode));
+            }
+            if (!rule.isEmpty()) {
+                if (!sb.isEmpty()) {
+                    sb.append(' ');
+                }
+                sb.append(rule);
+            }
+            if (owner != null) {
+                sb.append(' ').append(owner);
+                if (name != null) {
+                    sb.append(' ').append(name);
+                    if (desc != null) {
+                        sb.append(FIELD_INSNS.contains(opcode) ? " : " : "").append(desc);
+                    }
+                }
+            }
+            return sb.toString();
+        }
     }
 
     record Location(int lineNumber, int insnIndex) {
 
         public String describe() {
-            return lineNumber != -1 ? "line " + lineNumber : "insn index " + insnIndex;
+            if (lineNumber != -1) return "line " + lineNumber;
+            if (insnIndex != -1) return "insn index " + insnIndex;
+            return "declaration";
         }
     }
 }
@@ -0,0 +1,175 @@
+package net.covers1624.bcs.scanners;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import net.covers1624.bcs.util.CallGraph;
+import net.covers1624.bcs.util.CallGraph.CallPath;
+import net.covers1624.bcs.util.ClassHierarchy;
+import net.covers1624.bcs.util.MemberIndex;
+import net.covers1624.quack.collection.StreamableIterable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Matches public API methods which reach a banned method through any chain of calls.
+ * <p>
+ * Banned methods are configured in the same format as {@code method_use}. Every call in
+ * every scanned class is recorded in a {@link CallGraph}, once the scan is finished each
+ * public or protected method of a public class which can reach a banned method is reported,
+ * along with the shortest call path.
+ * <p>
+ * Calls are linked by the owner named at the call site, there is no resolution of
+ * inherited or overridden methods. Methods excluded by an ignore annotation contribute
+ * no calls, cutting any path through them.
+ * <p>
+ * Classes are identified by internal name alone, the call graph spans every input.
+ */
+public class TransitiveMethodUseScanner implements Scanner {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final IntSet OPCODES;
+
+    static {
+        IntSet opcodes = new IntOpenHashSet(METHOD_INSNS);
+        opcodes.add(INVOKEDYNAMIC);
+        OPCODES = IntSets.unmodifiable(opcodes);
+    }
+
+    private final MemberIndex index = new MemberIndex();
+
+    private CallGraph graph = new CallGraph();
+
+    public TransitiveMethodUseScanner(JsonElement jsonElement) {
+        if (!jsonElement.isJsonArray()) throw new JsonParseException("Expected Json array.");
+
+        StreamableIterable.of(jsonElement.getAsJsonArray())
+                .filterNot(JsonElement::isJsonNull)
+                .map(e -> e.getAsJsonPrimitive().getAsString())
+                .map(MethodUseScanner::parsePredicate)
+                .forEach(e -> index.add(e.owner(), e.name(), e.desc()));
+    }
+
+    @Override
+    public boolean isWholeProgram() {
+        return true;
+    }
+
+    @Override
+    public boolean scansDeclarations() {
+        return true;
+    }
+
+    @Override
+    public void setHierarchy(ClassHierarchy hierarchy) {
+        index.setHierarchy(hierarchy);
+    }
+
+    @Override
+    public IntSet getOpcodes() {
+        return OPCODES;
+    }
+
+    @Override
+    public void begin() {
+        graph = new CallGraph();
+    }
+
+    @Nullable
+    @Override
+    public ScanResult scanDeclaration(Declaration decl, ScanContext ctx) {
+        if (decl.kind() == Declaration.Kind.METHOD && isApi(ctx)) {
+            CallGraph.Builder builder = graph.builder();
+            builder.markRoot(builder.intern(ctx.getClassName(), ctx.getMethodName(), ctx.getMethodDesc()));
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public ScanResult scan(AbstractInsnNode insn, ScanContext ctx) {
+        if (insn instanceof MethodInsnNode mInsn) {
+            addCall(ctx, mInsn.owner, mInsn.name, mInsn.desc);
+        } else if (insn instanceof InvokeDynamicInsnNode indyInsn) {
+            // Lambdas and method references call through handles.
+            for (Object arg : indyInsn.bsmArgs) {
+                if (arg instanceof Handle handle && handle.getTag() >= H_INVOKEVIRTUAL) {
+                    addCall(ctx, handle.getOwner(), handle.getName(), handle.getDesc());
+                }
+            }
+        }
+        return null;
+    }
+
+    private void addCall(ScanContext ctx, String owner, String name, String desc) {
+        // Calls arrive one method at a time, remember the thread's builder and the caller's id.
+        Caller caller = ctx.getMethodData(this, () -> {
+            CallGraph.Builder builder = graph.builder();
+            return new Caller(builder, builder.intern(ctx.getClassName(), ctx.getMethodName(), ctx.getMethodDesc()));
+        });
+        int callee = caller.builder().intern(owner, name, desc);
+        if (index.matches(owner, name, desc)) {
+            caller.builder().markTarget(callee);
+        }
+        Location loc = ctx.getLocation();
+        caller.builder().addEdge(caller.id(), callee, loc.lineNumber(), loc.insnIndex());
+    }
+
+    @Override
+    public Map<String, Map<String, List<ScanResult>>> finish() {
+        CallGraph graph = this.graph;
+        this.graph = new CallGraph();
+        graph.finish();
+        LOGGER.info("Built call graph of {} methods and {} calls.", graph.size(), graph.getEdgeCount());
+
+        Map<String, Map<String, List<ScanResult>>> results = new HashMap<>();
+        for (CallPath path : graph.findPaths()) {
+            int root = path.root();
+            int target = path.target();
+            StringBuilder via = new StringBuilder();
+            for (int i = 1; i < path.methods().length - 1; i++) {
+                via.append(via.isEmpty() ? "via " : " -> ").append(describe(graph, path.methods()[i]));
+            }
+            ScanResult result = new ScanResult(
+                    new Location(path.line(), path.index()),
+                    NO_OPCODE,
+                    "transitively calls banned method:",
+                    describe(graph, target),
+                    via.isEmpty() ? null : via.toString(),
+                    null
+            );
+            results.computeIfAbsent(graph.getOwner(root), e -> new HashMap<>())
+                    .computeIfAbsent(graph.getName(root) + graph.getDesc(root), e -> new ArrayList<>())
+                    .add(result);
+        }
+        return results;
+    }
+
+    private static String describe(CallGraph graph, int id) {
+        return graph.getOwner(id) + "." + graph.getName(id) + graph.getDesc(id);
+    }
+
+    private static boolean isApi(ScanContext ctx) {
+        return (ctx.getClassAccess() & ACC_PUBLIC) != 0
+               && (ctx.getMethodAccess() & (ACC_PUBLIC | ACC_PROTECTED)) != 0
+               && (ctx.getMethodAccess() & ACC_SYNTHETIC) == 0;
+    }
+
+    private record Caller(CallGraph.Builder builder, int id) {
+    }
+}
@@ -2,19 +2,64 @@ package net.covers1624.bcs.scanners;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import net.covers1624.bcs.util.GlobMatcher;
 import net.covers1624.quack.collection.StreamableIterable;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
 import org.objectweb.asm.tree.*;
 
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
 
 /**
+ * Matches instructions referencing types.
+ * <p>
+ * This covers type, field and method instructions, class constants and method handles
+ * loaded by {@code LDC}, {@code MULTIANEWARRAY}, and {@code INVOKEDYNAMIC} descriptors
+ * and bootstrap arguments. The declarations of the class and its members are also
+ * matched, including generic signatures, caught exceptions and local variables.
+ * <p>
+ * Types are configured as internal name prefixes, e.g {@code sun/misc/}, or as globs
+ * matching the whole name, e.g {@code java/lang/reflect/**} or {@code sun/*}.
+ * <p>
  * Created by covers1624 on 23/11/22.
  */
 public class TypeUseScanner implements Scanner {
 
+    private static final IntSet OPCODES;
+
+    static {
+        IntSet opcodes = new IntOpenHashSet();
+        opcodes.addAll(TYPE_INSNS);
+        opcodes.addAll(FIELD_INSNS);
+        opcodes.addAll(METHOD_INSNS);
+        opcodes.add(LDC);
+        opcodes.add(MULTIANEWARRAY);
+        opcodes.add(INVOKEDYNAMIC);
+        OPCODES = IntSets.unmodifiable(opcodes);
+    }
+
+    private static final Map<Declaration.Kind, String> DECLARATION_RULES = new EnumMap<>(Declaration.Kind.class);
+
+    static {
+        for (Declaration.Kind kind : Declaration.Kind.values()) {
+            DECLARATION_RULES.put(kind, "type use in " + kind.getDescription() + ":");
+        }
+    }
+
     private final List<String> types;
+    private final GlobMatcher matcher;
 
     public TypeUseScanner(JsonElement jsonElement) {
         if (!jsonElement.isJsonArray()) throw new JsonParseException("Expected Json array.");
@@ -23,59 +68,108 @@ public class TypeUseScanner implements Scanner {
                 .filterNot(JsonElement::isJsonNull)
                 .map(e -> e.getAsJsonPrimitive().getAsString())
                 .toImmutableList();
+        matcher = GlobMatcher.compile(types, true);
+    }
+
+    @Override
+    public Collection<String> getConstantPoolPrefixes() {
+        return StreamableIterable.of(types)
+                .map(GlobMatcher::getLiteralPrefix)
+                .toList();
+    }
+
+    @Override
+    public IntSet getOpcodes() {
+        return OPCODES;
     }
 
     @Nullable
     @Override
-    public ScanResult scan(AbstractInsnNode insn, MethodNode mNode, ClassNode cNode) {
+    public ScanResult scan(AbstractInsnNode insn, ScanContext ctx) {
         if (matches(insn)) {
-            return Scanner.simpleResult(insn, mNode, "");
+            return Scanner.simpleResult(insn, ctx);
         }
         return null;
     }
 
-    private boolean matches(AbstractInsnNode insn) {
-        if (insn.getType() == AbstractInsnNode.TYPE_INSN) {
-            TypeInsnNode typeInsn = (TypeInsnNode) insn;
-            return matches(typeInsn.desc);
-        } else if (insn.getType() == AbstractInsnNode.FIELD_INSN) {
-            FieldInsnNode fieldInsn = (FieldInsnNode) insn;
-            if (matches(fieldInsn.owner)) {
-                return true;
-            }
-            return matches(Type.getType(fieldInsn.desc));
-        } else if (insn.getType() == AbstractInsnNode.METHOD_INSN) {
-            MethodInsnNode methodInsn = (MethodInsnNode) insn;
-            if (matches(methodInsn.owner)) {
-                return true;
-            }
-            return matches(Type.getType(methodInsn.desc));
+    @Override
+    public boolean scansDeclarations() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public ScanResult scanDeclaration(Declaration decl, ScanContext ctx) {
+        if (matches(decl)) {
+            return Scanner.declarationResult(decl, ctx, DECLARATION_RULES.get(decl.kind()));
         }
-        return false;
+        return null;
     }
 
-    private boolean matches(Type type) {
-        if (type.getSort() == Type.ARRAY) {
-            return matches(type.getElementType());
-        } else if (type.getSort() == Type.OBJECT) {
-            return matches(type.getInternalName());
-        } else if (type.getSort() == Type.METHOD) {
-            if (matches(type.getReturnType())) {
-                return true;
+    private boolean matches(Declaration decl) {
+        return switch (decl.kind().getFormat()) {
+            case INTERNAL_NAME -> matcher.matches(decl.value());
+            case DESCRIPTOR -> matcher.matchesAnyType(decl.value());
+            case SIGNATURE -> matchesSignature(decl.value());
+        };
+    }
+
+    private boolean matchesSignature(String signature) {
+        boolean[] found = { false };
+        new SignatureReader(signature).accept(new SignatureVisitor(ASM9) {
+            @Override
+            public void visitClassType(String name) {
+                found[0] |= matcher.matches(name);
             }
-            for (Type arg : type.getArgumentTypes()) {
-                if (matches(arg)) {
-                    return true;
-                }
+
+            @Override
+            public void visitInnerClassType(String name) {
+                // Inner class names are relative to their outer class, and can't be matched on their own.
+            }
+        });
+        return found[0];
+    }
+
+    // Every bootstrap method takes a MethodHandles.Lookup, only its owner is interesting.
+    private boolean matchesBootstrap(Handle bsm) {
+        return matcher.matches(bsm.getOwner());
+    }
+
+    private boolean matchesConstant(Object value) {
+        if (value instanceof Type type) {
+            return matcher.matchesAnyType(type.getDescriptor());
+        } else if (value instanceof Handle handle) {
+            return matcher.matches(handle.getOwner()) || matcher.matchesAnyType(handle.getDesc());
+        } else if (value instanceof ConstantDynamic condy) {
+            if (matcher.matchesAnyType(condy.getDescriptor()) || matchesBootstrap(condy.getBootstrapMethod())) return true;
+
+            for (int i = 0; i < condy.getBootstrapMethodArgumentCount(); i++) {
+                if (matchesConstant(condy.getBootstrapMethodArgument(i))) return true;
             }
         }
         return false;
     }
 
-    private boolean matches(String type) {
-        for (String s : types) {
-            if (type.startsWith(s)) {
-                return true;
+    private boolean matches(AbstractInsnNode insn) {
+        if (insn.getType() == AbstractInsnNode.TYPE_INSN) {
+            TypeInsnNode typeInsn = (TypeInsnNode) insn;
+            return matcher.matches(typeInsn.desc);
+        } else if (insn.getType() == AbstractInsnNode.FIELD_INSN) {
+            FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+            return matcher.matches(fieldInsn.owner) || matcher.matchesAnyType(fieldInsn.desc);
+        } else if (insn.getType() == AbstractInsnNode.METHOD_INSN) {
+            MethodInsnNode methodInsn = (MethodInsnNode) insn;
+            return matcher.matches(methodInsn.owner) || matcher.matchesAnyType(methodInsn.desc);
+        } else if (insn.getType() == AbstractInsnNode.LDC_INSN) {
+            return matchesConstant(((LdcInsnNode) insn).cst);
+        } else if (insn.getType() == AbstractInsnNode.MULTIANEWARRAY_INSN) {
+            return matcher.matchesAnyType(((MultiANewArrayInsnNode) insn).desc);
+        } else if (insn.getType() == AbstractInsnNode.INVOKE_DYNAMIC_INSN) {
+            InvokeDynamicInsnNode indyInsn = (InvokeDynamicInsnNode) insn;
+            if (matcher.matchesAnyType(indyInsn.desc) || matchesBootstrap(indyInsn.bsm)) return true;
+
+            for (Object arg : indyInsn.bsmArgs) {
+                if (matchesConstant(arg)) return true;
             }
         }
         return false;
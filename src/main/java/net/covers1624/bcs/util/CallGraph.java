@@ -0,0 +1,329 @@
+package net.covers1624.bcs.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact whole program call graph.
+ * <p>
+ * Methods are interned to int ids. Owners, names and descriptors repeat heavily, so each is
+ * interned separately, and ids are paired by packing them into a long. Edges are appended
+ * to primitive lists as calls are found, and only turned into adjacency arrays by {@link #finish()}.
+ * No ASM trees or per-method objects are retained.
+ * <p>
+ * Methods may be marked as roots, the methods to report, and as targets, the methods to find.
+ * <p>
+ * The graph is built through a {@link Builder} per thread, each with its own method ids, so
+ * scan threads never contend. {@link #finish()} merges them, and must be called once building
+ * is finished, before anything else is queried.
+ */
+public final class CallGraph {
+
+    private final Map<Thread, Builder> builders = new ConcurrentHashMap<>();
+
+    private final MethodTable methods = new MethodTable();
+    private final BitSet roots = new BitSet();
+    private final BitSet targets = new BitSet();
+
+    // Parallel arrays, one entry per call.
+    private int edges;
+    private int[] edgeFrom = new int[0];
+    private int[] edgeTo = new int[0];
+    private int[] edgeLines = new int[0];
+    private int[] edgeIndices = new int[0];
+
+    // Compressed adjacency, edge ids grouped by callee and by caller.
+    private int[] calleeStarts = new int[1];
+    private int[] calleeEdges = new int[0];
+    private int[] callerStarts = new int[1];
+    private int[] callerEdges = new int[0];
+
+    /**
+     * @return The builder of the calling thread.
+     */
+    public Builder builder() {
+        return builders.computeIfAbsent(Thread.currentThread(), e -> new Builder());
+    }
+
+    /**
+     * Merge every thread's builder and build the adjacency arrays.
+     */
+    public void finish() {
+        int total = edges;
+        for (Builder builder : builders.values()) {
+            total += builder.edgeFrom.size();
+        }
+        edgeFrom = Arrays.copyOf(edgeFrom, total);
+        edgeTo = Arrays.copyOf(edgeTo, total);
+        edgeLines = Arrays.copyOf(edgeLines, total);
+        edgeIndices = Arrays.copyOf(edgeIndices, total);
+        for (Builder builder : builders.values()) {
+            merge(builder);
+        }
+        builders.clear();
+
+        int methodCount = methods.size();
+        calleeStarts = new int[methodCount + 1];
+        calleeEdges = group(edgeTo, edges, calleeStarts);
+        callerStarts = new int[methodCount + 1];
+        callerEdges = group(edgeFrom, edges, callerStarts);
+    }
+
+    private void merge(Builder builder) {
+        int[] ids = new int[builder.methods.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = methods.intern(builder.methods.getOwner(i), builder.methods.getName(i), builder.methods.getDesc(i));
+        }
+        for (int i = builder.roots.nextSetBit(0); i >= 0; i = builder.roots.nextSetBit(i + 1)) {
+            roots.set(ids[i]);
+        }
+        for (int i = builder.targets.nextSetBit(0); i >= 0; i = builder.targets.nextSetBit(i + 1)) {
+            targets.set(ids[i]);
+        }
+
+        int added = builder.edgeFrom.size();
+        for (int i = 0; i < added; i++) {
+            edgeFrom[edges + i] = ids[builder.edgeFrom.getInt(i)];
+            edgeTo[edges + i] = ids[builder.edgeTo.getInt(i)];
+        }
+        builder.edgeLines.getElements(0, edgeLines, edges, added);
+        builder.edgeIndices.getElements(0, edgeIndices, edges, added);
+        edges += added;
+    }
+
+    public int size() {
+        return methods.size();
+    }
+
+    public int getEdgeCount() {
+        return edges;
+    }
+
+    public String getOwner(int id) {
+        return methods.getOwner(id);
+    }
+
+    public String getName(int id) {
+        return methods.getName(id);
+    }
+
+    public String getDesc(int id) {
+        return methods.getDesc(id);
+    }
+
+    /**
+     * Find the shortest call path from every root which can reach a target.
+     * <p>
+     * Reachability is computed in a single breadth first pass over the reversed
+     * graph, starting from every target at once. Where there are several shortest
+     * paths, the one through the earliest call in each method is picked, so the
+     * result does not depend on the order calls were added in.
+     *
+     * @return The paths, ordered by root id.
+     */
+    public List<CallPath> findPaths() {
+        int methodCount = methods.size();
+        int[] dist = new int[methodCount];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[methodCount];
+        int head = 0;
+        int tail = 0;
+        for (int id = targets.nextSetBit(0); id >= 0; id = targets.nextSetBit(id + 1)) {
+            dist[id] = 0;
+            queue[tail++] = id;
+        }
+        while (head < tail) {
+            int callee = queue[head++];
+            for (int i = calleeStarts[callee]; i < calleeStarts[callee + 1]; i++) {
+                int caller = edgeFrom[calleeEdges[i]];
+                if (dist[caller] == -1) {
+                    dist[caller] = dist[callee] + 1;
+                    queue[tail++] = caller;
+                }
+            }
+        }
+
+        List<CallPath> paths = new ArrayList<>();
+        for (int root = roots.nextSetBit(0); root >= 0; root = roots.nextSetBit(root + 1)) {
+            if (dist[root] <= 0) continue;
+
+            int[] path = new int[dist[root] + 1];
+            int firstEdge = -1;
+            int current = root;
+            path[0] = root;
+            for (int step = 1; step < path.length; step++) {
+                int best = -1;
+                for (int i = callerStarts[current]; i < callerStarts[current + 1]; i++) {
+                    int edge = callerEdges[i];
+                    if (dist[edgeTo[edge]] != dist[current] - 1) continue;
+
+                    if (best == -1 || edgeIndices[edge] < edgeIndices[best]) {
+                        best = edge;
+                    }
+                }
+                if (firstEdge == -1) {
+                    firstEdge = best;
+                }
+                current = path[step] = edgeTo[best];
+            }
+            paths.add(new CallPath(path, edgeLines[firstEdge], edgeIndices[firstEdge]));
+        }
+        return paths;
+    }
+
+    // Counting sort of edge ids by the given endpoint.
+    private static int[] group(int[] endpoints, int edges, int[] starts) {
+        for (int i = 0; i < edges; i++) {
+            starts[endpoints[i] + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] fill = Arrays.copyOf(starts, starts.length - 1);
+        int[] grouped = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            grouped[fill[endpoints[i]]++] = i;
+        }
+        return grouped;
+    }
+
+    /**
+     * Records the calls found by a single thread. Not thread safe.
+     * <p>
+     * Ids are local to the builder, and only valid for use with it.
+     */
+    public static final class Builder {
+
+        private final MethodTable methods = new MethodTable();
+        private final BitSet roots = new BitSet();
+        private final BitSet targets = new BitSet();
+
+        // Parallel lists, one entry per call.
+        private final IntArrayList edgeFrom = new IntArrayList();
+        private final IntArrayList edgeTo = new IntArrayList();
+        private final IntArrayList edgeLines = new IntArrayList();
+        private final IntArrayList edgeIndices = new IntArrayList();
+
+        private Builder() {
+        }
+
+        /**
+         * Intern a method.
+         *
+         * @param owner The internal name of the owner.
+         * @param name  The method name.
+         * @param desc  The method descriptor.
+         * @return The method's id.
+         */
+        public int intern(String owner, String name, String desc) {
+            return methods.intern(owner, name, desc);
+        }
+
+        /**
+         * Add a call.
+         *
+         * @param from  The id of the calling method.
+         * @param to    The id of the called method.
+         * @param line  The line the call is on, or {@code -1}.
+         * @param index The instruction index of the call.
+         */
+        public void addEdge(int from, int to, int line, int index) {
+            edgeFrom.add(from);
+            edgeTo.add(to);
+            edgeLines.add(line);
+            edgeIndices.add(index);
+        }
+
+        public void markRoot(int id) {
+            roots.set(id);
+        }
+
+        public void markTarget(int id) {
+            targets.set(id);
+        }
+    }
+
+    // Interns methods from their separately interned owner, name and descriptor.
+    private static final class MethodTable {
+
+        private final SymbolTable owners = new SymbolTable();
+        private final SymbolTable names = new SymbolTable();
+        private final SymbolTable descs = new SymbolTable();
+        private final Long2IntMap nameDescIds = new Long2IntOpenHashMap();
+        private final IntArrayList nameDescNames = new IntArrayList();
+        private final IntArrayList nameDescDescs = new IntArrayList();
+        private final Long2IntMap methodIds = new Long2IntOpenHashMap();
+        private final IntArrayList methodOwners = new IntArrayList();
+        private final IntArrayList methodNameDescs = new IntArrayList();
+
+        private MethodTable() {
+            nameDescIds.defaultReturnValue(-1);
+            methodIds.defaultReturnValue(-1);
+        }
+
+        public int intern(String owner, String name, String desc) {
+            int nameId = names.intern(name);
+            int descId = descs.intern(desc);
+            long nameDescKey = (long) nameId << 32 | descId;
+            int nameDescId = nameDescIds.get(nameDescKey);
+            if (nameDescId == -1) {
+                nameDescId = nameDescNames.size();
+                nameDescIds.put(nameDescKey, nameDescId);
+                nameDescNames.add(nameId);
+                nameDescDescs.add(descId);
+            }
+
+            long key = (long) owners.intern(owner) << 32 | nameDescId;
+            int id = methodIds.get(key);
+            if (id == -1) {
+                id = methodOwners.size();
+                methodIds.put(key, id);
+                methodOwners.add((int) (key >>> 32));
+                methodNameDescs.add(nameDescId);
+            }
+            return id;
+        }
+
+        public int size() {
+            return methodOwners.size();
+        }
+
+        public String getOwner(int id) {
+            return owners.get(methodOwners.getInt(id));
+        }
+
+        public String getName(int id) {
+            return names.get(nameDescNames.getInt(methodNameDescs.getInt(id)));
+        }
+
+        public String getDesc(int id) {
+            return descs.get(nameDescDescs.getInt(methodNameDescs.getInt(id)));
+        }
+    }
+
+    /**
+     * A shortest path from a root to a target.
+     *
+     * @param methods The ids of each method along the path, starting at the root and ending at the target.
+     * @param line    The line of the call made by the root, or {@code -1}.
+     * @param index   The instruction index of the call made by the root.
+     */
+    public record CallPath(int[] methods, int line, int index) {
+
+        public int root() {
+            return methods[0];
+        }
+
+        public int target() {
+            return methods[methods.length - 1];
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package net.covers1624.bcs.util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+
+/**
+ * The direct supertypes of every known class, keyed by interned id.
+ * <p>
+ * Built once per scan, from the header of every scanned and library class. Classes which
+ * are only referenced as a supertype are given an id, but have no supertypes of their own.
+ * <p>
+ * Building is not thread safe. Once built, the hierarchy may be read from any thread.
+ */
+public final class ClassHierarchy {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int[] NONE = new int[0];
+
+    private final SymbolTable names = new SymbolTable();
+    private final IntArrayList supers = new IntArrayList();
+    private final ObjectArrayList<int[]> interfaces = new ObjectArrayList<>();
+    private final BitSet known = new BitSet();
+    private long fingerprint;
+
+    /**
+     * Add a class. If the class has already been added, this does nothing.
+     *
+     * @param name       The internal name of the class.
+     * @param superName  The internal name of the super class, {@code null} for {@link Object}.
+     * @param interfaces The internal names of the directly implemented interfaces.
+     */
+    public void add(String name, @Nullable String superName, String[] interfaces) {
+        int id = getOrCreate(name);
+        if (known.get(id)) return;
+        known.set(id);
+
+        supers.set(id, superName != null ? getOrCreate(superName) : -1);
+        int[] ids = interfaces.length == 0 ? NONE : new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            ids[i] = getOrCreate(interfaces[i]);
+        }
+        this.interfaces.set(id, ids);
+
+        // Order independent, classes are added in whatever order they are read.
+        Hasher hasher = HASH_FUNCTION.newHasher()
+                .putUnencodedChars(name)
+                .putByte((byte) 0)
+                .putUnencodedChars(superName != null ? superName : "");
+        for (String itf : interfaces) {
+            hasher.putByte((byte) 0).putUnencodedChars(itf);
+        }
+        fingerprint += hasher.hash().asLong();
+    }
+
+    private int getOrCreate(String name) {
+        int id = names.intern(name);
+        if (id == supers.size()) {
+            supers.add(-1);
+            this.interfaces.add(NONE);
+        }
+        return id;
+    }
+
+    /**
+     * @param name The internal name of a class.
+     * @return The id of the class, or {@code -1} if it is unknown.
+     */
+    public int getId(String name) {
+        return names.lookup(name);
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @return The number of ids assigned, including classes only referenced as a supertype.
+     */
+    public int size() {
+        return supers.size();
+    }
+
+    /**
+     * @return The number of classes added.
+     */
+    public int getClassCount() {
+        return known.cardinality();
+    }
+
+    /**
+     * @return A hash of every class added, which changes if any class or its supertypes do.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Compute every supertype of the given class, direct or not.
+     * <p>
+     * This walks the hierarchy. Callers doing repeated lookups are expected to cache
+     * whatever they derive from the result.
+     *
+     * @param id The id of the class.
+     * @return The ids of the supertypes, not including the class itself.
+     */
+    public BitSet getAncestors(int id) {
+        BitSet ancestors = new BitSet();
+        IntArrayList queue = new IntArrayList();
+        queue.add(id);
+        for (int i = 0; i < queue.size(); i++) {
+            int current = queue.getInt(i);
+            int superId = supers.getInt(current);
+            if (superId != -1 && !ancestors.get(superId)) {
+                ancestors.set(superId);
+                queue.add(superId);
+            }
+            for (int itf : interfaces.get(current)) {
+                if (!ancestors.get(itf)) {
+                    ancestors.set(itf);
+                    queue.add(itf);
+                }
+            }
+        }
+        return ancestors;
+    }
+}
@@ -0,0 +1,284 @@
+package net.covers1624.bcs.util;
+
+import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.chars.Char2IntMap;
+import it.unimi.dsi.fastutil.chars.Char2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Matches internal names against a set of patterns, compiled into a single DFA.
+ * <p>
+ * Patterns may contain {@code *}, matching anything except {@code /}, and {@code **},
+ * matching anything. Glob patterns must match the whole name. Optionally, patterns
+ * without any wildcards may instead be treated as prefixes.
+ * <p>
+ * Matching costs a single table lookup per character, regardless of the number of patterns.
+ */
+public final class GlobMatcher {
+
+    private static final int MAX_STATES = 1 << 16;
+    private static final int[] NO_PATTERNS = new int[0];
+
+    // Token kinds, anything else is a literal char.
+    private static final int STAR = -1;
+    private static final int DOUBLE_STAR = -2;
+
+    // Character classes, every literal char gets its own class after these.
+    private static final int OTHER = 0;
+    private static final int SLASH = 1;
+
+    private final int[] asciiClasses;
+    private final Char2IntMap otherClasses;
+    private final int[][] transitions;
+    private final int[][] accepts;
+    private final boolean[] acceptsAll;
+    private final boolean[] dead;
+
+    private GlobMatcher(int[] asciiClasses, Char2IntMap otherClasses, int[][] transitions, int[][] accepts, boolean[] acceptsAll, boolean[] dead) {
+        this.asciiClasses = asciiClasses;
+        this.otherClasses = otherClasses;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.acceptsAll = acceptsAll;
+        this.dead = dead;
+    }
+
+    /**
+     * @param pattern The pattern.
+     * @return If the pattern contains any wildcards.
+     */
+    public static boolean isGlob(String pattern) {
+        return pattern.indexOf('*') != -1;
+    }
+
+    /**
+     * Get the literal prefix of a pattern, everything before its first wildcard.
+     *
+     * @param pattern The pattern.
+     * @return The prefix, may be empty.
+     */
+    public static String getLiteralPrefix(String pattern) {
+        int star = pattern.indexOf('*');
+        return star == -1 ? pattern : pattern.substring(0, star);
+    }
+
+    /**
+     * Compile the given patterns.
+     *
+     * @param patterns      The patterns. Their indexes are returned by {@link #getMatchingPatterns}.
+     * @param literalPrefix If patterns without wildcards should match as prefixes.
+     * @return The matcher.
+     */
+    public static GlobMatcher compile(List<String> patterns, boolean literalPrefix) {
+        List<int[]> tokenized = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            tokenized.add(tokenize(pattern, literalPrefix && !isGlob(pattern)));
+        }
+
+        // Assign character classes.
+        int[] asciiClasses = new int[128];
+        asciiClasses['/'] = SLASH;
+        Char2IntMap otherClasses = new Char2IntOpenHashMap();
+        otherClasses.defaultReturnValue(OTHER);
+        int classCount = 2;
+        for (int[] tokens : tokenized) {
+            for (int token : tokens) {
+                if (token < 0 || token == '/') continue;
+                if (token < 128) {
+                    if (asciiClasses[token] == OTHER) {
+                        asciiClasses[token] = classCount++;
+                    }
+                } else if (!otherClasses.containsKey((char) token)) {
+                    otherClasses.put((char) token, classCount++);
+                }
+            }
+        }
+
+        // Number each position in each pattern as an NFA state.
+        int[] base = new int[tokenized.size() + 1];
+        for (int i = 0; i < tokenized.size(); i++) {
+            base[i + 1] = base[i] + tokenized.get(i).length + 1;
+        }
+        int nfaStates = base[tokenized.size()];
+        int[] statePattern = new int[nfaStates];
+        int[] stateToken = new int[nfaStates];
+        boolean[] stateAccepts = new boolean[nfaStates];
+        boolean[] stateAcceptsAll = new boolean[nfaStates];
+        int[] tokenClass = new int[nfaStates];
+        for (int p = 0; p < tokenized.size(); p++) {
+            int[] tokens = tokenized.get(p);
+            boolean rest = true;
+            for (int pos = tokens.length; pos >= 0; pos--) {
+                int state = base[p] + pos;
+                statePattern[state] = p;
+                stateToken[state] = pos < tokens.length ? tokens[pos] : 0;
+                stateAccepts[state] = pos == tokens.length;
+                if (pos < tokens.length) {
+                    rest &= tokens[pos] == DOUBLE_STAR;
+                    stateAcceptsAll[state] = rest;
+                    int token = tokens[pos];
+                    if (token >= 0) {
+                        tokenClass[state] = token < 128 ? asciiClasses[token] : otherClasses.get((char) token);
+                    }
+                }
+            }
+        }
+
+        // Subset construction.
+        BitSet start = new BitSet(nfaStates);
+        for (int p = 0; p < tokenized.size(); p++) {
+            start.set(base[p]);
+        }
+        closure(start, stateToken, stateAccepts);
+
+        Object2IntMap<BitSet> ids = new Object2IntOpenHashMap<>();
+        List<BitSet> dfaStates = new ArrayList<>();
+        List<int[]> transitions = new ArrayList<>();
+        ids.put(start, 0);
+        dfaStates.add(start);
+        for (int i = 0; i < dfaStates.size(); i++) {
+            BitSet current = dfaStates.get(i);
+            int[] row = new int[classCount];
+            for (int cls = 0; cls < classCount; cls++) {
+                BitSet next = new BitSet(nfaStates);
+                for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+                    if (stateAccepts[s]) continue;
+                    int token = stateToken[s];
+                    if (token == DOUBLE_STAR || token == STAR && cls != SLASH) {
+                        next.set(s);
+                    } else if (token >= 0 && tokenClass[s] == cls) {
+                        next.set(s + 1);
+                    }
+                }
+                closure(next, stateToken, stateAccepts);
+                int id = ids.getOrDefault(next, -1);
+                if (id == -1) {
+                    id = dfaStates.size();
+                    if (id >= MAX_STATES) throw new JsonParseException("Patterns are too complex: " + patterns);
+                    ids.put(next, id);
+                    dfaStates.add(next);
+                }
+                row[cls] = id;
+            }
+            transitions.add(row);
+        }
+
+        int count = dfaStates.size();
+        int[][] accepts = new int[count][];
+        boolean[] acceptsAll = new boolean[count];
+        boolean[] dead = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            BitSet set = dfaStates.get(i);
+            IntArrayList matched = new IntArrayList();
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                if (stateAccepts[s]) {
+                    matched.add(statePattern[s]);
+                }
+                acceptsAll[i] |= stateAcceptsAll[s];
+            }
+            accepts[i] = matched.isEmpty() ? NO_PATTERNS : matched.toIntArray();
+            dead[i] = set.isEmpty();
+        }
+        return new GlobMatcher(asciiClasses, otherClasses, transitions.toArray(new int[0][]), accepts, acceptsAll, dead);
+    }
+
+    /**
+     * @param name The name.
+     * @return If any pattern matches the whole name.
+     */
+    public boolean matches(String name) {
+        return matches(name, 0, name.length());
+    }
+
+    /**
+     * Test a region of a string, without copying it.
+     *
+     * @param str   The string.
+     * @param start The start index, inclusive.
+     * @param end   The end index, exclusive.
+     * @return If any pattern matches the whole region.
+     */
+    public boolean matches(String str, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            if (dead[state]) return false;
+            if (acceptsAll[state]) return true;
+            state = transitions[state][classOf(str.charAt(i))];
+        }
+        return accepts[state].length != 0;
+    }
+
+    /**
+     * Test if any object type referenced by a descriptor matches.
+     * <p>
+     * The descriptor is scanned in place, array types are tested by their element type.
+     *
+     * @param desc A field or method descriptor.
+     * @return If any type matches.
+     */
+    public boolean matchesAnyType(String desc) {
+        int len = desc.length();
+        for (int i = 0; i < len; i++) {
+            if (desc.charAt(i) != 'L') continue;
+
+            int end = desc.indexOf(';', i);
+            if (end == -1) return false;
+            if (matches(desc, i + 1, end)) return true;
+            i = end;
+        }
+        return false;
+    }
+
+    /**
+     * Find every pattern which matches the whole name.
+     *
+     * @param name The name.
+     * @return The indexes of the matching patterns. Do not modify.
+     */
+    public int[] getMatchingPatterns(String name) {
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (dead[state]) return NO_PATTERNS;
+            state = transitions[state][classOf(name.charAt(i))];
+        }
+        return accepts[state];
+    }
+
+    private int classOf(char c) {
+        return c < 128 ? asciiClasses[c] : otherClasses.get(c);
+    }
+
+    private static int[] tokenize(String pattern, boolean prefix) {
+        IntArrayList tokens = new IntArrayList(pattern.length() + 1);
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '*') {
+                tokens.add(c);
+            } else if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                tokens.add(DOUBLE_STAR);
+                i++;
+            } else {
+                tokens.add(STAR);
+            }
+        }
+        if (prefix) {
+            tokens.add(DOUBLE_STAR);
+        }
+        return tokens.toIntArray();
+    }
+
+    // Wildcards may match nothing, so a state sitting on one also sits after it.
+    private static void closure(BitSet set, int[] stateToken, boolean[] stateAccepts) {
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            if (!stateAccepts[s] && stateToken[s] < 0) {
+                set.set(s + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package net.covers1624.bcs.util;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lookup table of member references, keyed by owner, then name, then descriptor.
+ * <p>
+ * Wildcard names and descriptors ({@code *}) are stored as their own entries, so
+ * a lookup costs a fixed number of hash probes regardless of how many members
+ * have been added.
+ * <p>
+ * Owners may also be globs, see {@link GlobMatcher}. These are compiled into a
+ * single matcher, costing time proportional to the length of the owner.
+ * <p>
+ * Adding only records the member. The matcher and the inherited owner slots are
+ * built on the first lookup after any add, so building an index is linear in its
+ * size. Members may not be added concurrently with lookups.
+ * <p>
+ * When given a {@link ClassHierarchy}, members are also matched through any supertype
+ * of the owner. For each class, the configured owners which are its supertypes are
+ * computed once and cached as a bitset, after which a lookup is a few hash probes per
+ * inherited owner.
+ */
+public class MemberIndex {
+
+    public static final String WILDCARD = "*";
+
+    private static final BitSet EMPTY = new BitSet();
+
+    private final Map<String, Map<String, Set<String>>> owners = new HashMap<>();
+    private final List<String> ownerGlobs = new ArrayList<>();
+    private final Object2IntMap<String> globIndices = new Object2IntOpenHashMap<>();
+    private final List<Map<String, Set<String>>> globNames = new ArrayList<>();
+
+    @Nullable
+    private ClassHierarchy hierarchy;
+    // Built on demand, cleared by any change.
+    @Nullable
+    private volatile Lookup lookup;
+
+    public MemberIndex() {
+        globIndices.defaultReturnValue(-1);
+    }
+
+    /**
+     * Add a member to the index.
+     *
+     * @param owner The internal name of the owner, or a glob.
+     * @param name  The member name, or {@link #WILDCARD} to match any member of the owner.
+     * @param desc  The member descriptor, or {@code null} to match any descriptor.
+     */
+    public void add(String owner, String name, @Nullable String desc) {
+        Map<String, Set<String>> names;
+        if (GlobMatcher.isGlob(owner)) {
+            int index = globIndices.getInt(owner);
+            if (index == -1) {
+                index = ownerGlobs.size();
+                ownerGlobs.add(owner);
+                globIndices.put(owner, index);
+                globNames.add(new HashMap<>());
+            }
+            names = globNames.get(index);
+        } else {
+            names = owners.computeIfAbsent(owner, e -> new HashMap<>());
+        }
+        names.computeIfAbsent(name, e -> new HashSet<>())
+                .add(desc != null ? desc : WILDCARD);
+        lookup = null;
+    }
+
+    /**
+     * Set the hierarchy used to match members through the supertypes of their owner.
+     *
+     * @param hierarchy The hierarchy, or {@code null} to only match owners exactly.
+     */
+    public void setHierarchy(@Nullable ClassHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        lookup = null;
+    }
+
+    public boolean matches(String owner, String name, String desc) {
+        Map<String, Set<String>> names = owners.get(owner);
+        if (names != null && matches(names, name, desc)) return true;
+
+        Lookup lookup = getLookup();
+        if (lookup.globMatcher != null) {
+            for (int index : lookup.globMatcher.getMatchingPatterns(owner)) {
+                if (matches(globNames.get(index), name, desc)) return true;
+            }
+        }
+
+        if (lookup.hierarchy != null) {
+            BitSet slots = lookup.getInheritedSlots(owner);
+            for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+                if (matches(lookup.ownerSlots.get(slot), name, desc)) return true;
+            }
+        }
+        return false;
+    }
+
+    private Lookup getLookup() {
+        Lookup lookup = this.lookup;
+        if (lookup != null) return lookup;
+
+        synchronized (this) {
+            lookup = this.lookup;
+            if (lookup == null) {
+                lookup = new Lookup();
+                this.lookup = lookup;
+            }
+            return lookup;
+        }
+    }
+
+    private static boolean matches(Map<String, Set<String>> names, String name, String desc) {
+        if (names.containsKey(WILDCARD)) return true;
+
+        Set<String> descs = names.get(name);
+        if (descs == null) return false;
+
+        return descs.contains(WILDCARD) || descs.contains(desc);
+    }
+
+    /**
+     * @return Prefixes of the owners of every member in this index. Exact owners,
+     * and the literal prefix of each glob.
+     */
+    public Set<String> getOwners() {
+        Set<String> prefixes = new HashSet<>(owners.keySet());
+        for (String glob : ownerGlobs) {
+            prefixes.add(GlobMatcher.getLiteralPrefix(glob));
+        }
+        return Collections.unmodifiableSet(prefixes);
+    }
+
+    public boolean isEmpty() {
+        return owners.isEmpty() && ownerGlobs.isEmpty();
+    }
+
+    /**
+     * The glob matcher and inherited owner slots, for the members and hierarchy at the time it was built.
+     */
+    private final class Lookup {
+
+        @Nullable
+        private final GlobMatcher globMatcher;
+        @Nullable
+        private final ClassHierarchy hierarchy;
+        // The names of each exact owner and glob, indexed by the bits of the inherited sets.
+        private final List<Map<String, Set<String>>> ownerSlots = new ArrayList<>();
+        private final Map<String, Integer> exactSlots = new HashMap<>();
+        @Nullable
+        private final AtomicReferenceArray<BitSet> inherited;
+
+        private Lookup() {
+            globMatcher = !ownerGlobs.isEmpty() ? GlobMatcher.compile(ownerGlobs, false) : null;
+            hierarchy = MemberIndex.this.hierarchy;
+            if (hierarchy == null) {
+                inherited = null;
+                return;
+            }
+
+            for (Map.Entry<String, Map<String, Set<String>>> entry : owners.entrySet()) {
+                exactSlots.put(entry.getKey(), ownerSlots.size());
+                ownerSlots.add(entry.getValue());
+            }
+            ownerSlots.addAll(globNames);
+            inherited = new AtomicReferenceArray<>(hierarchy.size());
+        }
+
+        private BitSet getInheritedSlots(String owner) {
+            int id = hierarchy.getId(owner);
+            if (id == -1 || id >= inherited.length()) return EMPTY;
+
+            BitSet slots = inherited.get(id);
+            if (slots == null) {
+                // Racing threads compute the same thing, whichever wins is fine.
+                slots = computeInheritedSlots(id);
+                inherited.set(id, slots);
+            }
+            return slots;
+        }
+
+        private BitSet computeInheritedSlots(int id) {
+            BitSet slots = new BitSet();
+            BitSet ancestors = hierarchy.getAncestors(id);
+            for (int ancestor = ancestors.nextSetBit(0); ancestor >= 0; ancestor = ancestors.nextSetBit(ancestor + 1)) {
+                String name = hierarchy.getName(ancestor);
+                Integer slot = exactSlots.get(name);
+                if (slot != null) {
+                    slots.set(slot);
+                }
+                if (globMatcher != null) {
+                    for (int index : globMatcher.getMatchingPatterns(name)) {
+                        slots.set(exactSlots.size() + index);
+                    }
+                }
+            }
+            return slots.isEmpty() ? EMPTY : slots;
+        }
+    }
+}
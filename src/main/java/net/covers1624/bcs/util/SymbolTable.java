@@ -0,0 +1,76 @@
+package net.covers1624.bcs.util;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Interns strings to dense integer ids.
+ * <p>
+ * {@code null} is given the id {@link #NULL}. Not thread safe.
+ */
+public final class SymbolTable {
+
+    public static final int NULL = -1;
+
+    private final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+    private final ObjectArrayList<String> symbols = new ObjectArrayList<>();
+
+    public SymbolTable() {
+        ids.defaultReturnValue(NULL);
+    }
+
+    /**
+     * Get the id for the given string, assigning one if required.
+     *
+     * @param str The string.
+     * @return The id.
+     */
+    public int intern(@Nullable String str) {
+        if (str == null) return NULL;
+
+        int id = ids.getInt(str);
+        if (id == NULL) {
+            id = symbols.size();
+            symbols.add(str);
+            ids.put(str, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of the given string, without assigning one.
+     *
+     * @param str The string.
+     * @return The id, or {@link #NULL} if the string has not been interned.
+     */
+    public int lookup(@Nullable String str) {
+        if (str == null) return NULL;
+        return ids.getInt(str);
+    }
+
+    @Nullable
+    public String get(int id) {
+        return id == NULL ? null : symbols.get(id);
+    }
+
+    public void clear() {
+        ids.clear();
+        symbols.clear();
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * @return Every symbol, indexed by id.
+     */
+    public List<String> getSymbols() {
+        return Collections.unmodifiableList(symbols);
+    }
+}
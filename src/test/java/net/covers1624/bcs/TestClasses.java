@@ -0,0 +1,108 @@
+package net.covers1624.bcs;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates small classes and jars to scan in tests.
+ */
+public final class TestClasses {
+
+    /**
+     * A config matching every hit emitted by {@link #generateClass}.
+     */
+    public static final String CONFIG = """
+            {
+              "groups": {
+                "exit": { "method_use": ["java.lang.System exit"] },
+                "out": { "field_use": ["java.lang.System out"] }
+              }
+            }
+            """;
+
+    private TestClasses() {
+    }
+
+    /**
+     * Generate a class with a single method, containing the given number of
+     * calls to {@code System.exit} and reads of {@code System.out}.
+     *
+     * @param name  The internal name of the class.
+     * @param exits The number of calls to {@code System.exit}.
+     * @param outs  The number of reads of {@code System.out}.
+     * @return The class bytes.
+     */
+    public static byte[] generateClass(String name, int exits, int outs) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "()V", null, null);
+        mv.visitCode();
+        for (int i = 0; i < 20; i++) {
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(POP);
+        }
+        for (int i = 0; i < exits; i++) {
+            mv.visitInsn(ICONST_0);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "exit", "(I)V", false);
+        }
+        for (int i = 0; i < outs; i++) {
+            mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            mv.visitInsn(POP);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generate the given number of classes, with a varying number of hits each.
+     *
+     * @param pkg   The internal name of the package to put the classes in.
+     * @param count The number of classes.
+     * @return The class file entries, keyed by path.
+     */
+    public static Map<String, byte[]> generateClasses(String pkg, int count) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = pkg + "/C" + i;
+            entries.put(name + ".class", generateClass(name, i % 3, i % 5 == 0 ? 1 : 0));
+        }
+        return entries;
+    }
+
+    public static byte[] jarBytes(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeJar(bos, entries);
+        return bos.toByteArray();
+    }
+
+    public static void writeJar(Path jar, Map<String, byte[]> entries) throws IOException {
+        try (OutputStream os = Files.newOutputStream(jar)) {
+            writeJar(os, entries);
+        }
+    }
+
+    private static void writeJar(OutputStream os, Map<String, byte[]> entries) throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(os)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jos.putNextEntry(new JarEntry(entry.getKey()));
+                jos.write(entry.getValue());
+                jos.closeEntry();
+            }
+        }
+    }
+}
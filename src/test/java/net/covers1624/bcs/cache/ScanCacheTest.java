@@ -0,0 +1,105 @@
+package net.covers1624.bcs.cache;
+
+import com.google.common.hash.HashCode;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanCacheTest {
+
+    private static final HashCode CONFIG = ScanCache.hashConfig("{\"groups\":{}}");
+    private static final byte[] CLASS_A = { 1, 2, 3 };
+    private static final byte[] CLASS_B = { 4, 5, 6 };
+    private static final Map<String, List<ScanResult>> RESULTS = Map.of(
+            "run()V", List.of(
+                    new ScanResult(new Location(12, 3), 0xB8, "exit", "java/lang/System", "exit", "(I)V"),
+                    new ScanResult(new Location(-1, 7), 0xC2, "MONITORENTER", null, null, null)
+            )
+    );
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        ScanCache cache = ScanCache.load(file, CONFIG);
+        assertNull(cache.get(ScanCache.hash(CLASS_A)));
+        cache.put(ScanCache.hash(CLASS_A), "test/A", RESULTS);
+        cache.put(ScanCache.hash(CLASS_B), "test/B", Map.of());
+        cache.save();
+        assertFalse(Files.exists(dir.resolve("cache.bin.tmp")));
+
+        ScanCache loaded = ScanCache.load(file, CONFIG);
+        assertEquals(new ScanCache.Entry("test/A", RESULTS), loaded.get(ScanCache.hash(CLASS_A)));
+        assertEquals(new ScanCache.Entry("test/B", Map.of()), loaded.get(ScanCache.hash(CLASS_B)));
+    }
+
+    @Test
+    public void testUnusedEntriesDropped() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        ScanCache cache = ScanCache.load(file, CONFIG);
+        cache.put(ScanCache.hash(CLASS_A), "test/A", RESULTS);
+        cache.put(ScanCache.hash(CLASS_B), "test/B", RESULTS);
+        cache.save();
+
+        // Only A is used in the next session.
+        cache = ScanCache.load(file, CONFIG);
+        assertNotNull(cache.get(ScanCache.hash(CLASS_A)));
+        cache.save();
+
+        cache = ScanCache.load(file, CONFIG);
+        assertNotNull(cache.get(ScanCache.hash(CLASS_A)));
+        assertNull(cache.get(ScanCache.hash(CLASS_B)));
+        cache.retainPrevious();
+        cache.save();
+        assertNotNull(ScanCache.load(file, CONFIG).get(ScanCache.hash(CLASS_A)));
+    }
+
+    @Test
+    public void testConfigChangeDiscards() throws IOException {
+        Path file = writeCache();
+        assertNull(ScanCache.load(file, ScanCache.hashConfig("{\"groups\":{\"other\":{}}}")).get(ScanCache.hash(CLASS_A)));
+        assertNotNull(ScanCache.load(file, CONFIG).get(ScanCache.hash(CLASS_A)));
+    }
+
+    @Test
+    public void testVersionChangeDiscards() throws IOException {
+        Path file = writeCache();
+        // The format version directly follows the magic.
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        buf.putInt(4, buf.getInt(4) + 1);
+        Files.write(file, bytes);
+
+        assertNull(ScanCache.load(file, CONFIG).get(ScanCache.hash(CLASS_A)));
+    }
+
+    @Test
+    public void testCorruptDiscards() throws IOException {
+        Path file = writeCache();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertNull(ScanCache.load(file, CONFIG).get(ScanCache.hash(CLASS_A)));
+    }
+
+    private Path writeCache() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        ScanCache cache = ScanCache.load(file, CONFIG);
+        cache.put(ScanCache.hash(CLASS_A), "test/A", RESULTS);
+        cache.save();
+        return file;
+    }
+}
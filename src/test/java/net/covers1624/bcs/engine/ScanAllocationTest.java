@@ -0,0 +1,85 @@
+package net.covers1624.bcs.engine;
+
+import net.covers1624.bcs.scanners.FieldUseScanner;
+import net.covers1624.bcs.scanners.FieldUseScanner.FieldPredicate;
+import net.covers1624.bcs.scanners.OpcodeUseScanner;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Guards the per-instruction path of the scan against allocating.
+ * <p>
+ * Scans classes which only differ in the number of instructions in each method,
+ * none of which match. Whatever is allocated per instruction shows up as the
+ * difference between them. The only expected allocation is the {@link ClassReader}'s
+ * label table, a reference per byte of code.
+ */
+public class ScanAllocationTest {
+
+    private static final int SMALL = 500;
+    private static final int LARGE = 20000;
+
+    @Test
+    public void testNoAllocationPerInstruction() {
+        ScanPlan plan = new ScanPlan(Set.of("Lt/Ignore;"), Map.of(
+                "fields", List.of(new FieldUseScanner(List.of(new FieldPredicate("java/lang/System", "out")))),
+                "ops", List.of(new OpcodeUseScanner(List.of(MONITORENTER)))
+        ));
+        ScanEngine engine = new StreamingScanEngine(plan);
+        byte[] small = generateClass(SMALL);
+        byte[] large = generateClass(LARGE);
+
+        // Warm up, so the JIT has settled.
+        for (int i = 0; i < 200; i++) {
+            engine.scanClass(new ClassReader(small));
+            engine.scanClass(new ClassReader(large));
+        }
+        long perInstruction = (allocatedPerScan(engine, large) - allocatedPerScan(engine, small)) / (2L * 3 * (LARGE - SMALL));
+        assertTrue(perInstruction < 16, "Allocated " + perInstruction + " bytes per instruction.");
+    }
+
+    private static long allocatedPerScan(ScanEngine engine, byte[] bytes) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int runs = 50;
+        long start = bean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            engine.scanClass(new ClassReader(bytes));
+        }
+        return (bean.getCurrentThreadAllocatedBytes() - start) / runs;
+    }
+
+    // Three methods of the given number of filler statements, one of them with some groups ignored.
+    private static byte[] generateClass(int statements) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC, "test/Filler", null, "java/lang/Object", null);
+        for (int m = 0; m < 3; m++) {
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run" + m, "()V", null, null);
+            if (m == 2) {
+                AnnotationVisitor av = mv.visitAnnotation("Lt/Ignore;", true);
+                av.visit("value", "ops");
+                av.visitEnd();
+            }
+            mv.visitCode();
+            for (int i = 0; i < statements; i++) {
+                mv.visitInsn(ICONST_1);
+                mv.visitInsn(POP);
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package net.covers1624.bcs.engine;
+
+import net.covers1624.bcs.scanners.OpcodeUseScanner;
+import net.covers1624.bcs.scanners.Scanner;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.objectweb.asm.tree.AnnotationNode;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.objectweb.asm.Opcodes.NOP;
+
+public class ScanPlanTest {
+
+    private static final String IGNORE = "Lt/Ignore;";
+
+    @ParameterizedTest
+    @ValueSource(ints = { 10, 64, 65, 200 })
+    public void testExclusionMasks(int groupCount) {
+        Map<String, List<Scanner>> groups = new LinkedHashMap<>();
+        Scanner[] scanners = new Scanner[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            scanners[i] = new OpcodeUseScanner(List.of(NOP));
+            groups.put("g" + i, List.of(scanners[i]));
+        }
+        ScanPlan plan = new ScanPlan(Set.of(IGNORE), groups);
+        int last = groupCount - 1;
+
+        assertEquals(groupCount, plan.getTable(0).get(NOP).length);
+
+        long first = plan.getExclusionMask(List.of(ignore("g0")));
+        assertFalse(plan.isAllExcluded(first));
+        assertExcluded(plan.getTable(first), scanners, Set.of(0));
+
+        long both = plan.union(first, plan.getExclusionMask(List.of(ignore("g" + last))));
+        assertExcluded(plan.getTable(both), scanners, Set.of(0, last));
+        assertEquals(both, plan.getExclusionMask(List.of(ignore(List.of("g" + last, "g0")))));
+        assertEquals(both, plan.union(both, first));
+
+        assertTrue(plan.isAllExcluded(plan.getExclusionMask(List.of(ignore("*")))));
+        assertTrue(plan.isAllExcluded(plan.getExclusionMask(List.of(new AnnotationNode(IGNORE)))));
+        assertSame(DispatchTable.EMPTY, plan.getTable(plan.getExclusionMask(List.of(ignore("*")))));
+    }
+
+    private static void assertExcluded(DispatchTable table, Scanner[] scanners, Set<Integer> excluded) {
+        List<Scanner> present = Arrays.asList(table.get(NOP));
+        assertEquals(scanners.length - excluded.size(), present.size());
+        for (int i = 0; i < scanners.length; i++) {
+            assertEquals(!excluded.contains(i), present.contains(scanners[i]), "Group g" + i);
+        }
+    }
+
+    private static AnnotationNode ignore(Object groups) {
+        AnnotationNode node = new AnnotationNode(IGNORE);
+        node.visit("value", groups);
+        return node;
+    }
+}
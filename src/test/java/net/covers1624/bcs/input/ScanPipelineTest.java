@@ -0,0 +1,169 @@
+package net.covers1624.bcs.input;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.covers1624.bcs.BadCodeScanner;
+import net.covers1624.bcs.TestClasses;
+import net.covers1624.bcs.input.InputWalker.ClassReadTask;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanPipelineTest {
+
+    @TempDir
+    Path dir;
+
+    private Path config;
+    private List<Path> inputs;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        config = dir.resolve("config.json");
+        Files.writeString(config, TestClasses.CONFIG);
+
+        Path a = dir.resolve("a.jar");
+        Path b = dir.resolve("b.jar");
+        Path classes = dir.resolve("classes");
+        TestClasses.writeJar(a, TestClasses.generateClasses("a", 300));
+
+        Map<String, byte[]> bEntries = TestClasses.generateClasses("b", 200);
+        bEntries.put("META-INF/jars/nested.jar", TestClasses.jarBytes(TestClasses.generateClasses("nested", 150)));
+        TestClasses.writeJar(b, bEntries);
+
+        for (Map.Entry<String, byte[]> entry : TestClasses.generateClasses("dir", 100).entrySet()) {
+            Path file = classes.resolve(entry.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+        inputs = List.of(a, b, classes);
+    }
+
+    @Test
+    public void testResultsMatchAcrossThreadCounts() throws IOException {
+        Map<String, Map<String, List<ScanResult>>> expected = scan(1, 1);
+        assertEquals(countClassesWithHits(300) + countClassesWithHits(200) + countClassesWithHits(150) + countClassesWithHits(100), expected.size());
+
+        assertEquals(expected, scan(2, 1));
+        assertEquals(expected, scan(4, 4));
+        assertEquals(expected, scan(32, 8));
+    }
+
+    @Test
+    public void testFinishesOnMultiJarInput() {
+        Map<String, Map<String, List<ScanResult>>> results = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> scan(1, 2));
+        assertTrue(results.keySet().stream().anyMatch(e -> e.startsWith(inputs.get(0) + "!/")));
+        assertTrue(results.keySet().stream().anyMatch(e -> e.startsWith(inputs.get(1) + "!/META-INF/jars/nested.jar!/")));
+        assertTrue(results.keySet().stream().anyMatch(e -> e.startsWith(inputs.get(2) + "/")));
+    }
+
+    @Test
+    public void testSlowClassBlocksSubmitting() throws Exception {
+        int classes = 100000;
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicLong submitted = new AtomicLong();
+        List<Long> emitted = new ArrayList<>();
+
+        ScanPipeline<Long> pipeline = new ScanPipeline<>(2, 4, (index, prefix, bytes) -> {
+            if (index == 0) {
+                Uninterruptibles.awaitUninterruptibly(unblock);
+            }
+            return index;
+        }, emitted::add);
+        Thread submitter = new Thread(() -> {
+            try (pipeline) {
+                for (int i = 0; i < classes; i++) {
+                    pipeline.submit(i, "", new byte[0]);
+                    submitted.incrementAndGet();
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        submitter.start();
+
+        // Every class after the first finishes, but the sink can't emit them until the first does.
+        Thread.sleep(500);
+        long held = submitted.get();
+        assertTrue(held < 1000, "Submitted " + held + " classes past a stalled one.");
+        Thread.sleep(200);
+        assertEquals(held, submitted.get());
+
+        unblock.countDown();
+        submitter.join(TimeUnit.SECONDS.toMillis(60));
+        assertFalse(submitter.isAlive());
+        assertEquals(classes, emitted.size());
+        for (int i = 0; i < classes; i++) {
+            assertEquals(i, emitted.get(i));
+        }
+    }
+
+    @Test
+    public void testCancelledReadsAreDiscarded() throws IOException {
+        int classes = 10000;
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger discarded = new AtomicInteger();
+        ClassReadTask task = new ClassReadTask() {
+            @Override
+            public byte[] read() {
+                read.incrementAndGet();
+                return new byte[0];
+            }
+
+            @Override
+            public void discard() {
+                discarded.incrementAndGet();
+            }
+        };
+
+        AtomicReference<ScanPipeline<Long>> ref = new AtomicReference<>();
+        try (ScanPipeline<Long> pipeline = new ScanPipeline<>(4, 2, (index, prefix, bytes) -> index, e -> ref.get().cancel())) {
+            ref.set(pipeline);
+            for (int i = 0; i < classes; i++) {
+                pipeline.submitRead(i, "", task);
+            }
+            assertTrue(pipeline.wasCancelled());
+        }
+        assertTrue(read.get() < classes);
+        assertEquals(classes, read.get() + discarded.get());
+    }
+
+    // See TestClasses.generateClasses, each class has i % 3 exits and every 5th reads System.out.
+    private static int countClassesWithHits(int count) {
+        int classes = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % 3 != 0 || i % 5 == 0) {
+                classes++;
+            }
+        }
+        return classes;
+    }
+
+    private Map<String, Map<String, List<ScanResult>>> scan(int ioThreads, int scanThreads) throws IOException {
+        BadCodeScanner scanner = new BadCodeScanner(BadCodeScanner.DEFAULT_SCANNERS);
+        scanner.setIoThreads(ioThreads);
+        scanner.setScanThreads(scanThreads);
+        scanner.setup(config);
+        scanner.operate(inputs);
+
+        Map<String, Map<String, List<ScanResult>>> results = new TreeMap<>();
+        scanner.getScanResults().forEach((cls, methods) -> results.put(cls, new TreeMap<>(methods)));
+        return results;
+    }
+}
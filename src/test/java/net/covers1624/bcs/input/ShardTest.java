@@ -0,0 +1,123 @@
+package net.covers1624.bcs.input;
+
+import net.covers1624.bcs.BadCodeScanner;
+import net.covers1624.bcs.TestClasses;
+import net.covers1624.bcs.results.ReportFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardTest {
+
+    private static final int SHARDS = 3;
+
+    @TempDir
+    Path dir;
+
+    private Path config;
+    private List<Path> inputs;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        config = dir.resolve("config.json");
+        Files.writeString(config, TestClasses.CONFIG);
+
+        Path a = dir.resolve("a.jar");
+        Path b = dir.resolve("b.jar");
+        TestClasses.writeJar(a, TestClasses.generateClasses("a", 300));
+        Map<String, byte[]> bEntries = TestClasses.generateClasses("b", 200);
+        bEntries.put("META-INF/jars/nested.jar", TestClasses.jarBytes(TestClasses.generateClasses("nested", 150)));
+        TestClasses.writeJar(b, bEntries);
+        inputs = List.of(a, b);
+    }
+
+    @Test
+    public void testContainsEveryClassOnce() {
+        for (int i = 0; i < 1000; i++) {
+            String entry = "a.jar!/a/C" + i + ".class";
+            int found = 0;
+            for (int index = 1; index <= SHARDS; index++) {
+                if (new Shard(index, SHARDS).contains(entry)) {
+                    found++;
+                }
+            }
+            assertEquals(1, found, entry);
+        }
+    }
+
+    @Test
+    public void testMergedMatchesUnsharded() throws IOException {
+        for (ReportFormat format : ReportFormat.values()) {
+            Path expected = dir.resolve("expected." + format);
+            BadCodeScanner scanner = newScanner(1);
+            scanner.setReport(expected, format);
+            scanner.operate(inputs);
+
+            List<Path> shards = scanShards(-1);
+            Path merged = dir.resolve("merged." + format);
+            scanner = newScanner(1);
+            scanner.setReport(merged, format);
+            scanner.merge(shards);
+
+            assertFalse(Files.readString(expected).isBlank());
+            assertEquals(Files.readString(expected), Files.readString(merged), format.name());
+        }
+    }
+
+    @Test
+    public void testMergedResultsMatchUnsharded() throws IOException {
+        BadCodeScanner scanner = newScanner(1);
+        scanner.operate(inputs);
+        Map<?, ?> expected = scanner.getScanResults();
+        assertFalse(expected.isEmpty());
+
+        scanner = newScanner(1);
+        scanner.merge(scanShards(-1));
+        assertEquals(expected, scanner.getScanResults());
+    }
+
+    @Test
+    public void testMergeRejectsIncompleteShard() throws IOException {
+        // Every shard has hits, stopping at the first leaves each incomplete.
+        List<Path> shards = scanShards(0);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> newScanner(1).merge(shards));
+        assertTrue(ex.getMessage().contains("stopped before scanning every class"), ex.getMessage());
+    }
+
+    @Test
+    public void testMergeRejectsMissingShard() throws IOException {
+        List<Path> shards = scanShards(-1);
+        assertThrows(IllegalArgumentException.class, () -> newScanner(1).merge(shards.subList(0, SHARDS - 1)));
+        assertThrows(IllegalArgumentException.class, () -> newScanner(1).merge(List.of(shards.get(0), shards.get(0), shards.get(1))));
+    }
+
+    // Shards use more threads than the unsharded run, so classes finish in a different order.
+    private List<Path> scanShards(int maxResults) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int index = 1; index <= SHARDS; index++) {
+            Path file = dir.resolve("shard" + index + ".bin");
+            BadCodeScanner scanner = newScanner(4);
+            scanner.setShard(new Shard(index, SHARDS), file);
+            scanner.setMaxResults(maxResults);
+            scanner.operate(inputs);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private BadCodeScanner newScanner(int scanThreads) throws IOException {
+        BadCodeScanner scanner = new BadCodeScanner(BadCodeScanner.DEFAULT_SCANNERS);
+        scanner.setScanThreads(scanThreads);
+        scanner.setup(config);
+        return scanner;
+    }
+}
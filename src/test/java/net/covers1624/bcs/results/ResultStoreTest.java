@@ -0,0 +1,56 @@
+package net.covers1624.bcs.results;
+
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultStoreTest {
+
+    @Test
+    public void testReplaceAndRemoveCompact() {
+        ResultStore store = new ResultStore();
+        Map<String, Map<String, List<ScanResult>>> expected = new HashMap<>();
+        Random rand = new Random(0);
+
+        for (int i = 0; i < 20000; i++) {
+            String cls = "test/C" + rand.nextInt(200);
+            if (rand.nextInt(4) == 0) {
+                assertEquals(expected.remove(cls) != null, store.remove(cls));
+            } else {
+                Map<String, List<ScanResult>> results = generateResults(rand, i);
+                store.add(cls, results);
+                expected.put(cls, results);
+            }
+            // Dead rows never outnumber live ones by much.
+            assertTrue(maxEnd(store) <= 2 * store.getResultCount() + 1024, "Store grew to " + maxEnd(store) + " rows for " + store.getResultCount() + " results.");
+        }
+        assertEquals(expected, new HashMap<>(store.asMap()));
+        assertEquals(expected.values().stream().flatMap(e -> e.values().stream()).mapToInt(List::size).sum(), store.getResultCount());
+    }
+
+    private static int maxEnd(ResultStore store) {
+        int max = 0;
+        for (int i = 0; i < store.getClassCount(); i++) {
+            max = Math.max(max, store.getEnd(i));
+        }
+        return max;
+    }
+
+    private static Map<String, List<ScanResult>> generateResults(Random rand, int seed) {
+        Map<String, List<ScanResult>> results = new LinkedHashMap<>();
+        int methods = 1 + rand.nextInt(3);
+        for (int m = 0; m < methods; m++) {
+            List<ScanResult> list = new ArrayList<>();
+            int count = 1 + rand.nextInt(10);
+            for (int i = 0; i < count; i++) {
+                list.add(new ScanResult(new Location(seed, i), 0xB8, "rule" + m, "java/lang/System", "exit", "(I)V"));
+            }
+            results.put("method" + m + "()V", list);
+        }
+        return results;
+    }
+}
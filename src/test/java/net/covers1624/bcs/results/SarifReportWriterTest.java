@@ -0,0 +1,50 @@
+package net.covers1624.bcs.results;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.scanners.Scanner.Location;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SarifReportWriterTest {
+
+    @Test
+    public void testLogicalLocationKinds() throws IOException {
+        ScanResult result = new ScanResult(new Location(-1, -1), -1, "type use in declaration", "sun/misc/Unsafe", null, null);
+        StringWriter out = new StringWriter();
+        try (SarifReportWriter writer = new SarifReportWriter(out)) {
+            writer.writeClass("test/Foo", Map.of(
+                    ScanEngine.CLASS_KEY, List.of(result),
+                    "unsafe:Lsun/misc/Unsafe;", List.of(result),
+                    "run(Lsun/misc/Unsafe;)V", List.of(result)
+            ));
+        }
+
+        Map<String, String> kinds = new HashMap<>();
+        JsonArray results = JsonParser.parseString(out.toString()).getAsJsonObject()
+                .getAsJsonArray("runs").get(0).getAsJsonObject()
+                .getAsJsonArray("results");
+        for (JsonElement element : results) {
+            JsonObject location = element.getAsJsonObject()
+                    .getAsJsonArray("locations").get(0).getAsJsonObject()
+                    .getAsJsonArray("logicalLocations").get(0).getAsJsonObject();
+            kinds.put(location.get("fullyQualifiedName").getAsString(), location.get("kind").getAsString());
+        }
+        assertEquals(Map.of(
+                "test/Foo", "type",
+                "test/Foo.unsafe:Lsun/misc/Unsafe;", "member",
+                "test/Foo.run(Lsun/misc/Unsafe;)V", "function"
+        ), kinds);
+    }
+}
@@ -0,0 +1,72 @@
+package net.covers1624.bcs.scanners;
+
+import net.covers1624.bcs.TestClasses;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.engine.TreeScanEngine;
+import net.covers1624.bcs.scanners.MethodUseScanner.MethodPredicate;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MethodUseScannerTest {
+
+    private static final Collection<byte[]> CLASSES = TestClasses.generateClasses("test", 500).values();
+
+    @Test
+    public void testResultsIndependentOfRuleCount() {
+        List<Map<String, List<ScanResult>>> expected = scanAll(newEngine(10));
+        assertTrue(expected.stream().anyMatch(e -> !e.isEmpty()));
+
+        assertEquals(expected, scanAll(newEngine(1000)));
+        assertEquals(expected, scanAll(newEngine(10000)));
+    }
+
+    @Test
+    public void testScanTimeFlatAsRuleCountGrows() {
+        long small = bestTime(newEngine(10));
+        long large = bestTime(newEngine(10000));
+        // Checking each rule in turn grows linearly with the rule count, allow plenty of noise.
+        assertTrue(large < small * 4, "10 rules took " + small + "ns, 10000 rules took " + large + "ns");
+    }
+
+    // The real rule, padded with rules for owners and names which never match.
+    private static ScanEngine newEngine(int rules) {
+        List<MethodPredicate> predicates = new ArrayList<>(rules);
+        predicates.add(new MethodPredicate("java/lang/System", "exit", null));
+        for (int i = 1; i < rules; i++) {
+            if (i % 2 == 0) {
+                predicates.add(new MethodPredicate("filler/Owner" + i, "method" + i, null));
+            } else {
+                predicates.add(new MethodPredicate("java/lang/System", "filler" + i, "()V"));
+            }
+        }
+        return new TreeScanEngine(new ScanPlan(Set.of(), Map.of("g", List.of(new MethodUseScanner(predicates)))));
+    }
+
+    private static List<Map<String, List<ScanResult>>> scanAll(ScanEngine engine) {
+        List<Map<String, List<ScanResult>>> results = new ArrayList<>(CLASSES.size());
+        for (byte[] bytes : CLASSES) {
+            results.add(engine.scanClass(new ClassReader(bytes)));
+        }
+        return results;
+    }
+
+    private static long bestTime(ScanEngine engine) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            scanAll(engine);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,141 @@
+package net.covers1624.bcs.scanners;
+
+import com.google.gson.JsonParser;
+import net.covers1624.bcs.engine.ScanEngine;
+import net.covers1624.bcs.engine.ScanPlan;
+import net.covers1624.bcs.engine.StreamingScanEngine;
+import net.covers1624.bcs.engine.TreeScanEngine;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.objectweb.asm.Opcodes.*;
+
+public class ReflectionUseScannerTest {
+
+    private static final String MEMBERS = "[\"sun.misc.Unsafe theUnsafe\", \"java/lang/System exit\", \"java/lang/Runtime halt\"]";
+    private static final int PADDING = 2000;
+
+    private static final Map<String, String> EXPECTED = Map.of(
+            "field()V", "reflective usage of field: sun/misc/Unsafe theUnsafe",
+            "method()V", "reflective usage of method: java/lang/System exit",
+            "handle()V", "reflective usage of method: java/lang/Runtime halt"
+    );
+
+    @Test
+    public void testLookups() {
+        String config = "{\"members\":" + MEMBERS + "}";
+        assertEquals(EXPECTED, scan(config, 0, TreeScanEngine::new));
+        assertEquals(EXPECTED, scan(config, 0, StreamingScanEngine::new));
+        // Plain array form.
+        assertEquals(EXPECTED, scan(MEMBERS, 0, TreeScanEngine::new));
+    }
+
+    @Test
+    public void testMaxInstructions() {
+        String config = "{\"members\":" + MEMBERS + ",\"max_instructions\":" + PADDING + "}";
+        assertEquals(EXPECTED, scan(config, 0, TreeScanEngine::new));
+        assertEquals(Map.of(), scan(config, PADDING, TreeScanEngine::new));
+        assertEquals(Map.of(), scan(config, PADDING, StreamingScanEngine::new));
+    }
+
+    @Test
+    public void testTimeout() {
+        // The same methods are found without the timeout, so only the timeout skips them.
+        assertEquals(EXPECTED, scan("{\"members\":" + MEMBERS + "}", PADDING, TreeScanEngine::new));
+
+        String config = "{\"members\":" + MEMBERS + ",\"timeout_ms\":0}";
+        assertEquals(Map.of(), scan(config, PADDING, TreeScanEngine::new));
+        assertEquals(Map.of(), scan(config, PADDING, StreamingScanEngine::new));
+    }
+
+    // The rule and member of each method's result.
+    private static Map<String, String> scan(String config, int padding, Function<ScanPlan, ScanEngine> engineFactory) {
+        ScanPlan plan = new ScanPlan(Set.of(), Map.of("g", List.of(new ReflectionUseScanner(JsonParser.parseString(config)))));
+        Map<String, List<ScanResult>> results = engineFactory.apply(plan).scanClass(new ClassReader(generateClass(padding)));
+        return results.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> {
+                    assertEquals(1, e.getValue().size(), e.getKey());
+                    ScanResult result = e.getValue().get(0);
+                    return result.rule() + " " + result.owner() + " " + result.name();
+                }));
+    }
+
+    private static byte[] generateClass(int padding) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC, "test/Reflective", null, "java/lang/Object", null);
+
+        // Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe")
+        MethodVisitor mv = beginMethod(cw, "field", padding);
+        forName(mv, "sun.misc.Unsafe");
+        mv.visitLdcInsn("theUnsafe");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getDeclaredField", "(Ljava/lang/String;)Ljava/lang/reflect/Field;", false);
+        endMethod(mv);
+
+        // Class.forName("java.lang.System").getDeclaredMethod("exit", int.class)
+        mv = beginMethod(cw, "method", padding);
+        forName(mv, "java.lang.System");
+        mv.visitLdcInsn("exit");
+        mv.visitInsn(ICONST_1);
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/Class");
+        mv.visitInsn(DUP);
+        mv.visitInsn(ICONST_0);
+        mv.visitFieldInsn(GETSTATIC, "java/lang/Integer", "TYPE", "Ljava/lang/Class;");
+        mv.visitInsn(AASTORE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getDeclaredMethod", "(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;", false);
+        endMethod(mv);
+
+        // MethodHandles.lookup().findVirtual(Runtime.class, "halt", MethodType.methodType(void.class, int.class))
+        mv = beginMethod(cw, "handle", padding);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;", false);
+        mv.visitLdcInsn(Type.getObjectType("java/lang/Runtime"));
+        mv.visitLdcInsn("halt");
+        mv.visitFieldInsn(GETSTATIC, "java/lang/Void", "TYPE", "Ljava/lang/Class;");
+        mv.visitFieldInsn(GETSTATIC, "java/lang/Integer", "TYPE", "Ljava/lang/Class;");
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodType", "methodType", "(Ljava/lang/Class;Ljava/lang/Class;)Ljava/lang/invoke/MethodType;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandles$Lookup", "findVirtual", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodHandle;", false);
+        endMethod(mv);
+
+        // Same shape as field, but a member which isn't configured. Must not reuse the analysis of field.
+        mv = beginMethod(cw, "other", padding);
+        forName(mv, "sun.misc.Unsafe");
+        mv.visitLdcInsn("other");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getDeclaredField", "(Ljava/lang/String;)Ljava/lang/reflect/Field;", false);
+        endMethod(mv);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static MethodVisitor beginMethod(ClassWriter cw, String name, int padding) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, name, "()V", null, new String[] { "java/lang/Exception" });
+        mv.visitCode();
+        for (int i = 0; i < padding; i++) {
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(POP);
+        }
+        return mv;
+    }
+
+    private static void forName(MethodVisitor mv, String className) {
+        mv.visitLdcInsn(className);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Class", "forName", "(Ljava/lang/String;)Ljava/lang/Class;", false);
+    }
+
+    private static void endMethod(MethodVisitor mv) {
+        mv.visitInsn(POP);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
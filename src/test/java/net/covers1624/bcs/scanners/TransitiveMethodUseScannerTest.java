@@ -0,0 +1,131 @@
+package net.covers1624.bcs.scanners;
+
+import net.covers1624.bcs.BadCodeScanner;
+import net.covers1624.bcs.TestClasses;
+import net.covers1624.bcs.scanners.Scanner.ScanResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.objectweb.asm.Opcodes.*;
+
+public class TransitiveMethodUseScannerTest {
+
+    private static final String CONFIG = """
+            {
+              "groups": {
+                "t": { "transitive_method_use": ["java.lang.System exit"] }
+              }
+            }
+            """;
+
+    private static final int LAYERS = 5;
+    private static final int WIDTH = 60;
+    private static final int JARS = 4;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testResultsMatchAcrossThreadCounts() throws IOException {
+        Path config = dir.resolve("config.json");
+        Files.writeString(config, CONFIG);
+        List<Path> inputs = writeInputs();
+
+        Map<String, Map<String, List<ScanResult>>> expected = scan(config, inputs, 1);
+        // Every layer has methods which reach System.exit, some only through a chain of calls.
+        assertTrue(expected.keySet().stream().anyMatch(e -> e.startsWith("p/L" + (LAYERS - 1) + "_")));
+        assertTrue(expected.values().stream()
+                .flatMap(e -> e.values().stream())
+                .flatMap(List::stream)
+                .anyMatch(e -> e.name() != null && e.name().contains(" -> ")));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, scan(config, inputs, 2));
+            assertEquals(expected, scan(config, inputs, 8));
+        }
+    }
+
+    private static Map<String, Map<String, List<ScanResult>>> scan(Path config, List<Path> inputs, int scanThreads) throws IOException {
+        BadCodeScanner scanner = new BadCodeScanner(BadCodeScanner.DEFAULT_SCANNERS);
+        scanner.setScanThreads(scanThreads);
+        scanner.setup(config);
+        scanner.operate(inputs);
+
+        Map<String, Map<String, List<ScanResult>>> results = new TreeMap<>();
+        scanner.getScanResults().forEach((cls, methods) -> results.put(cls, new TreeMap<>(methods)));
+        return results;
+    }
+
+    // Layers of classes, each calling into the layer below, the bottom layer calling System.exit.
+    // Many callers have several shortest paths, spread over several jars so they are scanned in any order.
+    private List<Path> writeInputs() throws IOException {
+        Random rand = new Random(0);
+        List<Map<String, byte[]>> jars = new ArrayList<>();
+        for (int i = 0; i < JARS; i++) {
+            jars.add(new LinkedHashMap<>());
+        }
+        for (int layer = 0; layer < LAYERS; layer++) {
+            for (int i = 0; i < WIDTH; i++) {
+                String name = "p/L" + layer + "_" + i;
+                jars.get(rand.nextInt(JARS)).put(name + ".class", generateClass(name, layer, rand));
+            }
+        }
+
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < JARS; i++) {
+            Path jar = dir.resolve("input" + i + ".jar");
+            TestClasses.writeJar(jar, jars.get(i));
+            inputs.add(jar);
+        }
+        return inputs;
+    }
+
+    private static byte[] generateClass(String name, int layer, Random rand) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        for (int m = 0; m < 3; m++) {
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "m" + m, "()V", null, null);
+            mv.visitCode();
+            if (layer == 0) {
+                if (rand.nextInt(3) == 0) {
+                    mv.visitInsn(ICONST_0);
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "exit", "(I)V", false);
+                }
+            } else {
+                for (int i = 0; i < 3; i++) {
+                    mv.visitMethodInsn(INVOKESTATIC, randomMethod(layer - 1, rand), "m" + rand.nextInt(3), "()V", false);
+                }
+                // Two handles to the layer below at the same instruction.
+                Handle bsm = new Handle(H_INVOKESTATIC, "p/Bootstrap", "bsm", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;", false);
+                mv.visitInvokeDynamicInsn("run", "()Ljava/lang/Runnable;", bsm,
+                        new Handle(H_INVOKESTATIC, randomMethod(layer - 1, rand), "m" + rand.nextInt(3), "()V", false),
+                        new Handle(H_INVOKESTATIC, randomMethod(layer - 1, rand), "m" + rand.nextInt(3), "()V", false)
+                );
+                mv.visitInsn(POP);
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static String randomMethod(int layer, Random rand) {
+        return "p/L" + layer + "_" + rand.nextInt(WIDTH);
+    }
+}
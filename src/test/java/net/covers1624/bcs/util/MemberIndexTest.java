@@ -0,0 +1,51 @@
+package net.covers1624.bcs.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemberIndexTest {
+
+    private static final int GLOBS = 3000;
+
+    @Test
+    public void testGlobOwners() {
+        MemberIndex index = assertTimeoutPreemptively(Duration.ofSeconds(10), MemberIndexTest::buildIndex);
+
+        assertTrue(index.matches("pkg0/Foo", "method0", "()V"));
+        assertTrue(index.matches("pkg" + (GLOBS - 1) + "/Foo", "method" + (GLOBS - 1), "()V"));
+        // Added twice, under both names.
+        assertTrue(index.matches("pkg7/Foo", "other7", "()V"));
+        assertFalse(index.matches("pkg7/Foo", "method8", "()V"));
+        assertFalse(index.matches("pkg7/sub/Foo", "method7", "()V"));
+        assertFalse(index.matches("other/Foo", "method0", "()V"));
+    }
+
+    @Test
+    public void testGlobOwnersInherited() {
+        MemberIndex index = buildIndex();
+        assertFalse(index.matches("other/Foo", "method5", "()V"));
+
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        hierarchy.add("pkg5/Base", "java/lang/Object", new String[0]);
+        hierarchy.add("other/Foo", "pkg5/Base", new String[0]);
+        index.setHierarchy(hierarchy);
+        assertTrue(index.matches("other/Foo", "method5", "()V"));
+        assertFalse(index.matches("other/Foo", "method6", "()V"));
+
+        // Members added after a lookup are still seen.
+        index.add("pkg5/*", "late", null);
+        assertTrue(index.matches("other/Foo", "late", "()V"));
+    }
+
+    private static MemberIndex buildIndex() {
+        MemberIndex index = new MemberIndex();
+        for (int i = 0; i < GLOBS; i++) {
+            index.add("pkg" + i + "/*", "method" + i, null);
+            index.add("pkg" + i + "/*", "other" + i, null);
+        }
+        return index;
+    }
+}